@@ -24,4 +24,9 @@ public @interface QueryTable {
      * 用于{@link QueryProvider}中优化查询操作，select * 优化为 select columns
      */
     Class<?> entity();
+
+    /**
+     * count上限，大于0时count最多统计该行数（如UI只需显示"10000+"），分页结果标记总数为下限
+     */
+    int countCap() default 0;
 }
@@ -0,0 +1,238 @@
+package com.jianghu.winter.query.cache;
+
+import com.jianghu.winter.query.util.FieldAccessor;
+import org.apache.commons.lang3.ArrayUtils;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 结构化缓存key：按{@link CacheUtil}编译的字段列表保存字段值，hash在创建时计算
+ * 相比拼接字符串，创建时不做任何格式化，equals只比较字段值
+ * <p>
+ * 远程缓存（如redis）需要字符串key时使用{@link #toHashedString()}
+ *
+ * @author daniel.hu
+ */
+public final class CacheKey implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String prefix;
+    /**
+     * 如表版本号，可为null；单独保存以便多个key共享同一实例
+     */
+    private final Object version;
+    private final Class<?> type;
+    /**
+     * 不为null时只包含该类以下（子类）声明的字段，见{@link CacheUtil#keyFieldsOf(Class, Class)}
+     */
+    private final Class<?> stopClass;
+    /**
+     * 非null字段位图，第i位对应第i个编译字段；字段超过64个时为-1，此时values与编译字段一一对应
+     */
+    private final long mask;
+    /**
+     * 只保存非null的字段值
+     */
+    private final Object[] values;
+    private final int hash;
+
+    private CacheKey(String prefix, Object version, Class<?> type, Class<?> stopClass, long mask, Object[] values) {
+        this.prefix = prefix;
+        this.version = version;
+        this.type = type;
+        this.stopClass = stopClass;
+        this.mask = mask;
+        this.values = values;
+        this.hash = 31 * (31 * (31 * Objects.hash(prefix, version) + type.hashCode()) + Long.hashCode(mask)) + Arrays.deepHashCode(values);
+    }
+
+    public static CacheKey of(String prefix, Object query) {
+        return of(prefix, null, query);
+    }
+
+    public static CacheKey of(String prefix, Object version, Object query) {
+        return of(prefix, version, query, null);
+    }
+
+    /**
+     * 集合及数组字段会被复制，之后修改query不影响已生成的key
+     *
+     * @param stopClass 不为null时忽略该类及其父类声明的字段，如count不关心的分页、排序字段
+     */
+    public static CacheKey of(String prefix, Object version, Object query, Class<?> stopClass) {
+        List<FieldAccessor> fields = CacheUtil.keyFieldsOf(query.getClass(), stopClass);
+        if (fields.size() > Long.SIZE) {
+            Object[] values = new Object[fields.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = snapshot(fields.get(i).get(query));
+            }
+            return new CacheKey(prefix, version, query.getClass(), stopClass, -1L, values);
+        }
+        long mask = 0;
+        Object[] buffer = new Object[fields.size()];
+        int count = 0;
+        for (int i = 0; i < buffer.length; i++) {
+            Object value = fields.get(i).get(query);
+            if (value != null) {
+                mask |= 1L << i;
+                buffer[count++] = snapshot(value);
+            }
+        }
+        return new CacheKey(prefix, version, query.getClass(), stopClass, mask, Arrays.copyOf(buffer, count));
+    }
+
+    public Object getVersion() {
+        return version;
+    }
+
+    /**
+     * Set复制为HashSet，元素相同的Set得到相同的key，与迭代顺序无关；数组（包括基本类型数组）复制为同类型数组
+     */
+    private static Object snapshot(Object value) {
+        if (value instanceof Set) {
+            return new HashSet<>((Set<?>) value);
+        }
+        if (value instanceof Collection) {
+            return Arrays.asList(((Collection<?>) value).toArray());
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * 128位MD5摘要（32位十六进制），长度固定
+     * 摘要基于带类型及长度前缀的编码而非{@link #toString()}，字段值中的分隔符不会造成不同key的摘要相同
+     */
+    public String toHashedString() {
+        StringBuilder builder = new StringBuilder();
+        encodeText(builder, 'P', prefix);
+        encodeValue(builder, version);
+        encodeText(builder, 'T', type.getName());
+        encodeText(builder, 'S', stopClass == null ? "" : stopClass.getName());
+        encodeText(builder, 'M', Long.toString(mask));
+        for (Object value : values) {
+            encodeValue(builder, value);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+            char[] chars = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+                chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+            }
+            return prefix + new String(chars);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 unsupported", e);
+        }
+    }
+
+    private static void encodeValue(StringBuilder builder, Object value) {
+        if (value == null) {
+            builder.append('N');
+        } else if (value instanceof Set) {
+            // 按元素编码排序，与迭代顺序无关
+            List<String> elements = new ArrayList<>(((Set<?>) value).size());
+            for (Object element : (Set<?>) value) {
+                StringBuilder elementBuilder = new StringBuilder();
+                encodeValue(elementBuilder, element);
+                elements.add(elementBuilder.toString());
+            }
+            Collections.sort(elements);
+            builder.append('E').append(elements.size()).append(':');
+            elements.forEach(builder::append);
+        } else if (value instanceof Collection) {
+            builder.append('L').append(((Collection<?>) value).size()).append(':');
+            for (Object element : (Collection<?>) value) {
+                encodeValue(builder, element);
+            }
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            builder.append('A').append(length).append(':');
+            for (int i = 0; i < length; i++) {
+                encodeValue(builder, Array.get(value, i));
+            }
+        } else {
+            encodeText(builder, 'C', value.getClass().getName());
+            encodeText(builder, 'V', value.toString());
+        }
+    }
+
+    /**
+     * 如: V6:daniel
+     */
+    private static void encodeText(StringBuilder builder, char tag, String text) {
+        builder.append(tag).append(text.length()).append(':').append(text);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+        CacheKey that = (CacheKey) o;
+        return hash == that.hash
+                && mask == that.mask
+                && type == that.type
+                && stopClass == that.stopClass
+                && prefix.equals(that.prefix)
+                && Objects.equals(version, that.version)
+                && Arrays.deepEquals(values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * 格式同{@link CacheUtil#transformObjectToCacheKey(Object)}，带前缀及版本号
+     */
+    @Override
+    public String toString() {
+        List<FieldAccessor> fields = CacheUtil.keyFieldsOf(type, stopClass);
+        StringBuilder builder = new StringBuilder(prefix);
+        if (version != null) {
+            builder.append(version).append('_');
+        }
+        builder.append('{');
+        boolean first = true;
+        int index = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            if (mask != -1L && (mask & 1L << i) == 0) {
+                continue;
+            }
+            Object value = values[index++];
+            if (value == null) {
+                continue;
+            }
+            if (!first) {
+                builder.append(',');
+            }
+            builder.append(fields.get(i).getName()).append(':');
+            builder.append(value.getClass().isArray() ? ArrayUtils.toString(value) : Objects.toString(value));
+            first = false;
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -1,55 +1,79 @@
 package com.jianghu.winter.query.cache;
 
-import org.apache.commons.lang3.builder.ToStringBuilder;
-import org.apache.commons.lang3.builder.ToStringStyle;
+import com.jianghu.winter.query.util.FieldAccessor;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * @author daniel.hu
  */
 public class CacheUtil {
+    private static final Map<Class<?>, List<FieldAccessor>> KEY_FIELDS_CACHE = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Map<Class<?>, List<FieldAccessor>>> SUBSET_KEY_FIELDS_CACHE = new ConcurrentHashMap<>();
+
     private CacheUtil() {
     }
 
     /**
      * 不序列化null值对应的key
+     * 格式同ToStringBuilder：{field1:value1,field2:value2}
      */
     public static String transformObjectToCacheKey(Object query) {
-        return ToStringBuilder.reflectionToString(query, new NonNullToStringStyle());
+        StringBuilder builder = new StringBuilder("{");
+        for (FieldAccessor accessor : keyFieldsOf(query.getClass())) {
+            Object value = accessor.get(query);
+            if (value == null) {
+                continue;
+            }
+            if (builder.length() > 1) {
+                builder.append(',');
+            }
+            builder.append(accessor.getName()).append(':');
+            builder.append(value.getClass().isArray() ? ArrayUtils.toString(value) : value);
+        }
+        return builder.append('}').toString();
     }
 
-    static final class NonNullToStringStyle extends ToStringStyle {
-
-        NonNullToStringStyle() {
-            super();
-
-            this.setUseClassName(false);
-            this.setUseIdentityHashCode(false);
-
-            this.setContentStart("{");
-            this.setContentEnd("}");
-
-            this.setArrayStart("[");
-            this.setArrayEnd("]");
-
-            this.setFieldSeparator(",");
-            this.setFieldNameValueSeparator(":");
-
-            this.setNullText("null");
-
-            this.setSummaryObjectStartText("\"<");
-            this.setSummaryObjectEndText(">\"");
+    /**
+     * 参与缓存key的字段，每个类只解析一次
+     */
+    static List<FieldAccessor> keyFieldsOf(Class<?> clazz) {
+        return KEY_FIELDS_CACHE.computeIfAbsent(clazz, CacheUtil::resolveKeyFields);
+    }
 
-            this.setSizeStartText("\"<size=");
-            this.setSizeEndText(">\"");
+    /**
+     * @param stopClass 不为null时排除该类及其父类声明的字段（如分页、排序字段）
+     */
+    static List<FieldAccessor> keyFieldsOf(Class<?> clazz, Class<?> stopClass) {
+        if (stopClass == null) {
+            return keyFieldsOf(clazz);
         }
+        return SUBSET_KEY_FIELDS_CACHE.computeIfAbsent(stopClass, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(clazz, key -> keyFieldsOf(clazz).stream()
+                        .filter(accessor -> !accessor.getField().getDeclaringClass().isAssignableFrom(stopClass))
+                        .collect(Collectors.toList()));
+    }
 
-        @Override
-        public void append(StringBuffer buffer, String fieldName, Object value, Boolean fullDetail) {
-            if (value != null) {
-                super.append(buffer, fieldName, value, fullDetail);
-            }
-        }
+    /**
+     * 子类字段在前，跳过static、transient及内部类引用字段
+     */
+    private static List<FieldAccessor> resolveKeyFields(Class<?> clazz) {
+        return FieldUtils.getAllFieldsList(clazz).stream()
+                .filter(CacheUtil::isKeyField)
+                .map(FieldAccessor::of)
+                .collect(Collectors.toList());
+    }
 
+    private static boolean isKeyField(Field field) {
+        int modifiers = field.getModifiers();
+        return !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && field.getName().indexOf('$') == -1;
     }
 
 }
@@ -4,11 +4,46 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.Cache;
 import org.springframework.cache.support.NoOpCache;
 
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
 /**
+ * 缓存读写
+ * 未命中时同一缓存、同一key同时只有一个加载（single-flight），其他调用方等待其结果或异常，
+ * 等待超过{@link #setLoadTimeoutMillis(long)}时各自加载
+ *
  * @author daniel.hu
  */
 @Slf4j
 public class CacheWrapper {
+    private static final Map<FlightKey, CompletableFuture<Object>> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final LongAdder LOAD_COUNT = new LongAdder();
+    private static final LongAdder COALESCED_COUNT = new LongAdder();
+    private static final LongAdder TIMEOUT_COUNT = new LongAdder();
+    private static final LongAdder REFRESH_COUNT = new LongAdder();
+    private static volatile long loadTimeoutMillis = 30_000;
+    /**
+     * 加载结果不写入缓存
+     */
+    private static final Object NO_CACHE = new Object();
+    /**
+     * 缓存中没有可用的值
+     */
+    private static final Object MISS = new Object();
+
     private CacheWrapper() {
     }
 
@@ -17,16 +52,317 @@ public class CacheWrapper {
         if (cache instanceof NoOpCache || key == null) {
             return cacheInvoker.invoke();
         }
+        Function<Cache.ValueWrapper, Object> reader = valueWrapper -> valueWrapper == null ? MISS : valueWrapper.get();
+        Object cached = reader.apply(read(cache, key));
+        if (cached != MISS) {
+            return (V) cached;
+        }
+        return load(cache, key, reader, cacheInvoker, value -> value, null);
+    }
+
+    /**
+     * 同{@link #execute(Cache, Object, CacheInvoker)}，但null结果以{@link NullEntry}缓存nullTtlMillis毫秒（负缓存），
+     * 避免反复查询不存在的数据；nullTtlMillis不大于0时null结果不缓存
+     */
+    public static <V> V execute(Cache cache, Object key, long nullTtlMillis, CacheInvoker<V> cacheInvoker) {
+        return execute(cache, key, nullTtlMillis, null, cacheInvoker);
+    }
+
+    /**
+     * 同{@link #execute(Cache, Object, long, CacheInvoker)}，负缓存带有versionSupplier提供的版本号，版本号变化后视为未命中；
+     * 写入缓存后版本号已变化（加载期间有写入）时删除本次写入，避免旧数据在失效之后被写回
+     *
+     * @param versionSupplier 如表版本号，写入方需先更新版本号再删除缓存；只在读到负缓存或未命中时调用，可为null
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V execute(Cache cache, Object key, long nullTtlMillis, Supplier<?> versionSupplier, CacheInvoker<V> cacheInvoker) {
+        if (cache instanceof NoOpCache || key == null) {
+            return cacheInvoker.invoke();
+        }
+        Object cached = get(cache, key);
+        if (cached != null && !(cached instanceof NullEntry)) {
+            return (V) cached;
+        }
+        // 在查询前读取版本号，查询期间的写入会使本次的负缓存失效
+        Object version = versionSupplier == null ? null : versionSupplier.get();
+        if (cached != null && !((NullEntry) cached).isExpired(version)) {
+            return null;
+        }
+        Function<Cache.ValueWrapper, Object> reader = valueWrapper -> {
+            Object value = valueWrapper == null ? null : valueWrapper.get();
+            if (value instanceof NullEntry) {
+                return ((NullEntry) value).isExpired(version) ? MISS : null;
+            }
+            return value == null ? MISS : value;
+        };
+        return load(cache, key, reader, cacheInvoker, value -> {
+            if (value != null) {
+                return value;
+            }
+            return nullTtlMillis > 0 ? new NullEntry(nullTtlMillis, version) : NO_CACHE;
+        }, versionSupplier == null ? null : () -> Objects.equals(version, versionSupplier.get()));
+    }
+
+    /**
+     * 提前刷新：未超过softTtl直接返回；超过softTtl返回缓存值并异步刷新（同一key同时只有一个刷新）；
+     * 超过hardTtl或未命中时同步加载
+     */
+    public static <V> V execute(Cache cache, Object key, RefreshAheadPolicy policy, CacheInvoker<V> cacheInvoker) {
+        return execute(cache, key, policy, cacheInvoker, () -> cacheInvoker);
+    }
+
+    /**
+     * 同{@link #execute(Cache, Object, RefreshAheadPolicy, CacheInvoker)}，异步刷新使用refreshInvoker创建的加载器
+     *
+     * @param refreshInvoker 在调用方线程中、提交刷新前调用，用于复制加载器引用的可变参数（如query），使刷新与key一致
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V execute(Cache cache, Object key, RefreshAheadPolicy policy, CacheInvoker<V> cacheInvoker,
+                                Supplier<CacheInvoker<V>> refreshInvoker) {
+        if (cache instanceof NoOpCache || key == null) {
+            return cacheInvoker.invoke();
+        }
+        Object cached = get(cache, key);
+        if (cached instanceof RefreshAheadPolicy.TimedEntry) {
+            RefreshAheadPolicy.TimedEntry entry = (RefreshAheadPolicy.TimedEntry) cached;
+            if (!entry.isExpired()) {
+                if (entry.isStale()) {
+                    refreshAsync(cache, key, policy, refreshInvoker);
+                }
+                return (V) entry.getValue();
+            }
+        }
+        return load(cache, key, valueWrapper -> {
+            Object value = valueWrapper == null ? null : valueWrapper.get();
+            if (value instanceof RefreshAheadPolicy.TimedEntry && !((RefreshAheadPolicy.TimedEntry) value).isExpired()) {
+                return ((RefreshAheadPolicy.TimedEntry) value).getValue();
+            }
+            return MISS;
+        }, cacheInvoker, policy::wrap, null);
+    }
+
+    /**
+     * 单个加载的最长等待时间，超时后调用方自行加载
+     */
+    public static void setLoadTimeoutMillis(long timeoutMillis) {
+        loadTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return 实际执行的加载次数
+     */
+    public static long getLoadCount() {
+        return LOAD_COUNT.sum();
+    }
+
+    /**
+     * @return 等待其他调用方加载结果（未重复加载）的次数
+     */
+    public static long getCoalescedCount() {
+        return COALESCED_COUNT.sum();
+    }
+
+    /**
+     * @return 等待超时后自行加载的次数
+     */
+    public static long getTimeoutCount() {
+        return TIMEOUT_COUNT.sum();
+    }
+
+    /**
+     * @return 完成的异步刷新次数
+     */
+    public static long getRefreshCount() {
+        return REFRESH_COUNT.sum();
+    }
+
+    private static void refreshAsync(Cache cache, Object key, RefreshAheadPolicy policy, Supplier<? extends CacheInvoker<?>> refreshInvoker) {
+        FlightKey flightKey = new FlightKey(cache.getName(), key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        if (IN_FLIGHT.putIfAbsent(flightKey, flight) != null) {
+            return;
+        }
+        CacheInvoker<?> cacheInvoker;
+        try {
+            cacheInvoker = refreshInvoker.get();
+        } catch (RuntimeException e) {
+            log.warn(String.format("Cache refresh skipped: [cache=%s, key=%s]", cache.getName(), key), e);
+            IN_FLIGHT.remove(flightKey, flight);
+            flight.cancel(false);
+            return;
+        }
+        try {
+            policy.getExecutor().execute(() -> {
+                try {
+                    Object value = cacheInvoker.invoke();
+                    cache.put(key, policy.wrap(value));
+                    flight.complete(value);
+                    REFRESH_COUNT.increment();
+                } catch (RuntimeException | Error e) {
+                    log.warn(String.format("Cache refresh failed: [cache=%s, key=%s]", cache.getName(), key), e);
+                    flight.completeExceptionally(e);
+                } finally {
+                    IN_FLIGHT.remove(flightKey, flight);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 刷新队列已满，放弃本次刷新；已在等待的调用方自行加载
+            IN_FLIGHT.remove(flightKey, flight);
+            flight.cancel(false);
+        }
+    }
+
+    /**
+     * @param reader     读取缓存值，不可用时返回{@link #MISS}
+     * @param stillValid 写入缓存后检查，返回false时删除本次写入，可为null
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> V load(Cache cache, Object key, Function<Cache.ValueWrapper, Object> reader,
+                              CacheInvoker<V> cacheInvoker, UnaryOperator<Object> toCacheValue, BooleanSupplier stillValid) {
+        FlightKey flightKey = new FlightKey(cache.getName(), key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = IN_FLIGHT.putIfAbsent(flightKey, flight);
+        if (existing != null) {
+            COALESCED_COUNT.increment();
+            return (V) await(existing, cacheInvoker);
+        }
         try {
-            Cache.ValueWrapper valueWrapper = cache.get(key);
-            if (valueWrapper != null) {
-                return (V) valueWrapper.get();
+            // 上一个加载可能在本次未命中之后、注册之前写入缓存并移除，注册后再读一次
+            Object cached = reader.apply(read(cache, key));
+            if (cached != MISS) {
+                flight.complete(cached);
+                return (V) cached;
+            }
+            LOAD_COUNT.increment();
+            V value = cacheInvoker.invoke();
+            // 先写缓存再移除，之后的调用方直接命中缓存
+            Object cacheValue = toCacheValue.apply(value);
+            if (cacheValue != NO_CACHE) {
+                cache.put(key, cacheValue);
+                // 先写后检查：检查之后的写入方会在更新版本号后删除这次写入
+                if (stillValid != null && !stillValid.getAsBoolean()) {
+                    cache.evict(key);
+                }
             }
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(flightKey, flight);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> flight, CacheInvoker<?> cacheInvoker) {
+        try {
+            return flight.get(loadTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            TIMEOUT_COUNT.increment();
+            log.warn("Cache load timeout after {}ms, loading without cache", loadTimeoutMillis);
+            return cacheInvoker.invoke();
+        } catch (CancellationException e) {
+            return cacheInvoker.invoke();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for cache load", e);
+        }
+    }
+
+    /**
+     * @return 未命中或读取失败时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V get(Cache cache, Object key) {
+        if (cache instanceof NoOpCache) {
+            return null;
+        }
+        Cache.ValueWrapper valueWrapper = read(cache, key);
+        return valueWrapper == null ? null : (V) valueWrapper.get();
+    }
+
+    /**
+     * @return 未命中或读取失败时返回null
+     */
+    private static Cache.ValueWrapper read(Cache cache, Object key) {
+        try {
+            return cache.get(key);
         } catch (Exception e) {
             log.error(String.format("Cache#get failed: [cache=%s, key=%s]", cache.getName(), key), e);
+            return null;
+        }
+    }
+
+    /**
+     * 负缓存标记，过期或版本号变化后视为未命中
+     */
+    public static final class NullEntry implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final long expiresAt;
+        /**
+         * 写入时的版本号，可为null
+         */
+        private final Object version;
+
+        public NullEntry(long ttlMillis) {
+            this(ttlMillis, null);
+        }
+
+        public NullEntry(long ttlMillis, Object version) {
+            this.expiresAt = System.currentTimeMillis() + ttlMillis;
+            this.version = version;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+
+        /**
+         * @param currentVersion 当前版本号，与写入时不同则视为过期
+         */
+        public boolean isExpired(Object currentVersion) {
+            return isExpired() || !Objects.equals(version, currentVersion);
+        }
+    }
+
+    /**
+     * 加载中的key，按缓存名区分
+     */
+    private static final class FlightKey {
+        private final String cacheName;
+        private final Object key;
+        private final int hash;
+
+        FlightKey(String cacheName, Object key) {
+            this.cacheName = cacheName;
+            this.key = key;
+            this.hash = 31 * cacheName.hashCode() + key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FlightKey)) {
+                return false;
+            }
+            FlightKey that = (FlightKey) o;
+            return hash == that.hash && cacheName.equals(that.cacheName) && key.equals(that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
-        V value = cacheInvoker.invoke();
-        cache.put(key, value);
-        return value;
     }
 }
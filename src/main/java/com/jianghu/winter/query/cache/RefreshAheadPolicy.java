@@ -0,0 +1,103 @@
+package com.jianghu.winter.query.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 提前刷新策略
+ * 超过softTtl后仍返回缓存值，同时在executor中异步刷新；超过hardTtl后调用方同步加载
+ *
+ * @author daniel.hu
+ */
+public class RefreshAheadPolicy {
+    private static final int DEFAULT_THREADS = 2;
+    private static final int DEFAULT_QUEUE_SIZE = 256;
+
+    private final long softTtlMillis;
+    private final long hardTtlMillis;
+    private final Executor executor;
+
+    public RefreshAheadPolicy(long softTtlMillis, long hardTtlMillis, Executor executor) {
+        if (softTtlMillis < 0 || hardTtlMillis < softTtlMillis) {
+            throw new IllegalArgumentException("Require 0 <= softTtl <= hardTtl: " + softTtlMillis + ", " + hardTtlMillis);
+        }
+        this.softTtlMillis = softTtlMillis;
+        this.hardTtlMillis = hardTtlMillis;
+        this.executor = executor;
+    }
+
+    /**
+     * 使用进程内共享的有界刷新线程池，队列满时放弃本次刷新（下次读取时再次尝试）
+     */
+    public RefreshAheadPolicy(long softTtlMillis, long hardTtlMillis) {
+        this(softTtlMillis, hardTtlMillis, SharedExecutorHolder.EXECUTOR);
+    }
+
+    public long getSoftTtlMillis() {
+        return softTtlMillis;
+    }
+
+    public long getHardTtlMillis() {
+        return hardTtlMillis;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    TimedEntry wrap(Object value) {
+        long now = System.currentTimeMillis();
+        return new TimedEntry(value, now + softTtlMillis, now + hardTtlMillis);
+    }
+
+    /**
+     * 所有默认策略共用，重复创建策略不会产生新线程；空闲线程超时后退出
+     */
+    private static final class SharedExecutorHolder {
+        private static final Executor EXECUTOR = newRefreshExecutor();
+
+        private static Executor newRefreshExecutor() {
+            AtomicInteger threadNumber = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(DEFAULT_QUEUE_SIZE), runnable -> {
+                Thread thread = new Thread(runnable, "cache-refresh-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /**
+     * 带软、硬过期时间的缓存值
+     */
+    public static final class TimedEntry implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final Object value;
+        private final long softExpiresAt;
+        private final long hardExpiresAt;
+
+        TimedEntry(Object value, long softExpiresAt, long hardExpiresAt) {
+            this.value = value;
+            this.softExpiresAt = softExpiresAt;
+            this.hardExpiresAt = hardExpiresAt;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public boolean isStale() {
+            return System.currentTimeMillis() >= softExpiresAt;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= hardExpiresAt;
+        }
+    }
+}
@@ -1,21 +1,55 @@
 package com.jianghu.winter.query.core;
 
-import com.jianghu.winter.query.cache.CacheUtil;
+import com.jianghu.winter.query.cache.CacheKey;
 import com.jianghu.winter.query.cache.CacheWrapper;
+import com.jianghu.winter.query.cache.RefreshAheadPolicy;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
 import org.springframework.cache.support.NoOpCache;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * @author daniel.hu
  */
 public abstract class AbstractMybatisDataService<E extends Persistable<I>, I extends Serializable, Q extends PageQuery> implements MybatisDataService<E, I, Q> {
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final BatchOptions DEFAULT_BATCH_OPTIONS = BatchOptions.builder().build();
+    private static final String VERSION_KEY = "version";
+    private static final long DEFAULT_NEGATIVE_CACHE_TTL_MILLIS = 5000;
 
     protected abstract IMapper<E, I, Q> getMapper();
 
@@ -23,6 +57,36 @@ public abstract class AbstractMybatisDataService<E extends Persistable<I>, I ext
 
     protected final Class<E> entityClass;
 
+    /**
+     * JDBC批处理使用，未配置时不支持批处理接口
+     */
+    protected SqlSessionFactory sqlSessionFactory;
+
+    private Class<? extends IMapper<E, I, Q>> mapperInterface;
+
+    /**
+     * 单条sql分页（需注册{@link PageTotalInterceptor}）
+     */
+    private boolean singleStatementPage;
+
+    /**
+     * get(id)请求合并，为null时不合并
+     */
+    private volatile IdBatchLoader<I, E> idBatchLoader;
+
+    private long negativeCacheTtlMillis = DEFAULT_NEGATIVE_CACHE_TTL_MILLIS;
+
+    private boolean hashedCacheKeys;
+
+    /**
+     * query/count提前刷新，为null时不刷新
+     */
+    private RefreshAheadPolicy refreshAheadPolicy;
+
+    /**
+     * 查询类缓存按表版本号失效，旧版本的条目只能由缓存自身淘汰，因此要求缓存有容量上限或过期时间（如Caffeine、带TTL的Redis）
+     * notice: {@link ConcurrentMapCache}没有淘汰策略，写入后会直接删除旧版本的条目
+     */
     @Autowired(required = false)
     public void setCacheManager(CacheManager cacheManager) {
         if (cacheManager != null) {
@@ -30,6 +94,11 @@ public abstract class AbstractMybatisDataService<E extends Persistable<I>, I ext
         }
     }
 
+    @Autowired(required = false)
+    public void setSqlSessionFactory(SqlSessionFactory sqlSessionFactory) {
+        this.sqlSessionFactory = sqlSessionFactory;
+    }
+
     @SuppressWarnings("unchecked")
     public AbstractMybatisDataService() {
         this.entityClass = (Class<E>) getParameterizedType();
@@ -42,13 +111,56 @@ public abstract class AbstractMybatisDataService<E extends Persistable<I>, I ext
         return parameterizedTypes[0];
     }
 
+    public void setSingleStatementPage(boolean singleStatementPage) {
+        this.singleStatementPage = singleStatementPage;
+    }
+
     protected String getCacheName() {
         return entityClass.getSimpleName().intern();
     }
 
     @Override
     public E get(I id) {
-        return getMapper().get(id);
+        return CacheWrapper.execute(cache, idCacheKey(id), negativeCacheTtlMillis, this::currentVersion, () -> {
+            IdBatchLoader<I, E> loader = idBatchLoader;
+            if (loader != null) {
+                return join(loader.load(id));
+            }
+            return getMapper().get(id);
+        });
+    }
+
+    /**
+     * 不存在的id缓存时长，0为不缓存
+     * 负缓存带有表版本号，任何写入后失效（如create生成了之前查询过的id）
+     */
+    public void setNegativeCacheTtlMillis(long negativeCacheTtlMillis) {
+        this.negativeCacheTtlMillis = negativeCacheTtlMillis;
+    }
+
+    /**
+     * 开启get(id)请求合并：windowMillis内（或达到maxBatchSize时）的并发请求合并为一次IN查询
+     * notice: 合并后的查询在加载线程中执行，mapper需线程安全（如SqlSessionTemplate）
+     */
+    public synchronized void enableGetCoalescing(long windowMillis, int maxBatchSize) {
+        disableGetCoalescing();
+        idBatchLoader = new IdBatchLoader<>(this::getByIds, windowMillis, maxBatchSize);
+    }
+
+    public synchronized void disableGetCoalescing() {
+        IdBatchLoader<I, E> loader = idBatchLoader;
+        if (loader != null) {
+            idBatchLoader = null;
+            loader.close();
+        }
+    }
+
+    /**
+     * @return 未开启请求合并时返回空
+     */
+    public Map<Integer, Long> getCoalescedBatchSizeHistogram() {
+        IdBatchLoader<I, E> loader = idBatchLoader;
+        return loader == null ? Collections.emptyMap() : loader.getBatchSizeHistogram();
     }
 
     @Override
@@ -56,22 +168,290 @@ public abstract class AbstractMybatisDataService<E extends Persistable<I>, I ext
         return CommonUtil.first(query(query));
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<I, E> getAll(Collection<I> ids) {
+        Map<I, E> result = new LinkedHashMap<>();
+        List<I> misses = new ArrayList<>();
+        // 在查询前读取版本号，见CacheWrapper#execute(Cache, Object, long, Supplier, CacheInvoker)
+        Object version = currentVersion();
+        for (I id : new LinkedHashSet<>(ids)) {
+            Object cached = CacheWrapper.get(cache, idCacheKey(id));
+            if (cached instanceof CacheWrapper.NullEntry) {
+                if (((CacheWrapper.NullEntry) cached).isExpired(version)) {
+                    misses.add(id);
+                }
+            } else if (cached != null) {
+                result.put(id, (E) cached);
+            } else {
+                misses.add(id);
+            }
+        }
+        Map<I, E> fetched = new HashMap<>();
+        for (E entity : getByIds(misses)) {
+            fetched.put(entity.getId(), entity);
+        }
+        // 保持入参顺序
+        for (I id : misses) {
+            E entity = fetched.get(id);
+            if (entity != null) {
+                result.put(id, entity);
+                cache.put(idCacheKey(id), entity);
+            } else if (negativeCacheTtlMillis > 0) {
+                cache.put(idCacheKey(id), new CacheWrapper.NullEntry(negativeCacheTtlMillis, version));
+            }
+        }
+        if (!misses.isEmpty() && !version.equals(currentVersion())) {
+            // 查询期间有写入，本次写入的可能是旧数据
+            misses.forEach(id -> cache.evict(idCacheKey(id)));
+        }
+        return result;
+    }
+
+    /**
+     * 按IN分批查询，每批补齐到固定分桶大小（重复id不影响结果），保证只会生成少数几种sql
+     */
+    protected List<E> getByIds(List<I> ids) {
+        List<E> entities = new ArrayList<>(ids.size());
+        for (List<I> chunk : InListPadding.chunks(ids)) {
+            entities.addAll(getMapper().getByIds(chunk));
+        }
+        return entities;
+    }
+
+    protected String idCacheKey(I id) {
+        return "id_" + id;
+    }
+
+    /**
+     * 查询类缓存key带有表版本号：写入后版本号变化，旧版本的缓存不再被读取，见{@link #setCacheManager(CacheManager)}
+     */
+    protected Object queryCacheKey(String prefix, Q query) {
+        CacheKey cacheKey = CacheKey.of(prefix, currentVersion(), query);
+        return hashedCacheKeys ? cacheKey.toHashedString() : cacheKey;
+    }
+
+    /**
+     * count只与过滤条件及count上限有关，忽略{@link PageQuery}的分页、排序字段，同一条件的各页共用一个count缓存
+     */
+    protected Object countCacheKey(Q query) {
+        int countCap = QueryPlan.of(query.getClass()).countCapOf(query);
+        String prefix = countCap > 0 ? "count_cap" + countCap + "_" : "count_";
+        CacheKey cacheKey = CacheKey.of(prefix, currentVersion(), query, PageQuery.class);
+        return hashedCacheKeys ? cacheKey.toHashedString() : cacheKey;
+    }
+
+    /**
+     * 开启query/count的提前刷新：超过softTtl仍返回缓存值并异步刷新，超过hardTtl才同步查询
+     * notice: 刷新在刷新线程中执行，mapper需线程安全（如SqlSessionTemplate）
+     */
+    public void enableRefreshAhead(long softTtlMillis, long hardTtlMillis) {
+        this.refreshAheadPolicy = new RefreshAheadPolicy(softTtlMillis, hardTtlMillis);
+    }
+
+    public void setRefreshAheadPolicy(RefreshAheadPolicy refreshAheadPolicy) {
+        this.refreshAheadPolicy = refreshAheadPolicy;
+    }
+
+    /**
+     * 异步刷新使用query的副本：key在调用时生成，调用方之后修改query（如翻页）不能影响刷新结果
+     */
+    private <V> V executeCached(Object key, Q query, Function<Q, V> loader) {
+        RefreshAheadPolicy policy = refreshAheadPolicy;
+        if (policy != null) {
+            return CacheWrapper.execute(cache, key, policy, () -> loader.apply(query), () -> {
+                Q snapshot = SerializationUtils.clone(query);
+                return () -> loader.apply(snapshot);
+            });
+        }
+        return CacheWrapper.execute(cache, key, () -> loader.apply(query));
+    }
+
+    /**
+     * 使用定长的字符串摘要作为查询类缓存key，适用于要求字符串key的远程缓存
+     */
+    public void setHashedCacheKeys(boolean hashedCacheKeys) {
+        this.hashedCacheKeys = hashedCacheKeys;
+    }
+
+    private Object currentVersion() {
+        Object version = CacheWrapper.get(cache, VERSION_KEY);
+        if (version == null) {
+            version = nextVersion();
+            Cache.ValueWrapper existing = cache.putIfAbsent(VERSION_KEY, version);
+            if (existing != null && existing.get() != null) {
+                version = existing.get();
+            }
+        }
+        return version;
+    }
+
+    /**
+     * 写入后调用：按id精确失效id缓存，并更新表版本使查询类缓存失效
+     * notice: 按条件写入（patch/delete by query）无法确定影响的id，仍清空整个缓存
+     */
+    protected void invalidate(Collection<I> ids) {
+        // 先更新版本号再删除：并发加载在写入id缓存后检查版本号，读到旧版本时其写入一定在本次删除之前
+        String version = nextVersion();
+        cache.put(VERSION_KEY, version);
+        for (I id : ids) {
+            if (id != null) {
+                cache.evict(idCacheKey(id));
+            }
+        }
+        if (cache instanceof ConcurrentMapCache) {
+            evictStaleEntries((ConcurrentMapCache) cache, version);
+        }
+    }
+
+    /**
+     * 无淘汰策略的缓存：删除旧版本的查询类条目及已过期的负缓存，避免内存随写入无限增长
+     */
+    private void evictStaleEntries(ConcurrentMapCache mapCache, String version) {
+        if (hashedCacheKeys) {
+            // 摘要key中无法识别版本号
+            mapCache.clear();
+            return;
+        }
+        mapCache.getNativeCache().entrySet().removeIf(entry -> isStale(entry.getKey(), entry.getValue(), version));
+    }
+
+    private static boolean isStale(Object key, Object value, String version) {
+        if (key instanceof CacheKey) {
+            return !version.equals(((CacheKey) key).getVersion());
+        }
+        return value instanceof CacheWrapper.NullEntry && ((CacheWrapper.NullEntry) value).isExpired(version);
+    }
+
+    /**
+     * 随机生成而非自增，并发写入（包括多个实例共享缓存时）不会得到相同的版本号
+     */
+    private static String nextVersion() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    private List<I> idsOf(Iterable<E> entities) {
+        List<I> ids = new ArrayList<>();
+        entities.forEach(entity -> ids.add(entity.getId()));
+        return ids;
+    }
+
     @Override
     public void create(E entity) {
         try {
             getMapper().insert(entity);
         } finally {
-            cache.clear();
+            // 插入后id已知时精确失效（负缓存），未知时由版本号变化失效
+            invalidate(Collections.singletonList(entity.getId()));
         }
     }
 
     @Override
     public int create(Iterable<E> entities) {
         try {
-            return getMapper().batchInsert(entities);
+            return executeBucketed(entities, getMapper()::batchInsert);
         } finally {
-            cache.clear();
+            invalidate(idsOf(entities));
+        }
+    }
+
+    /**
+     * 超过最大分桶时按最大分桶拆分为多条语句，见{@link CrudProvider#batchInsertBucketSize(int)}
+     */
+    private int executeBucketed(Iterable<E> entities, ToIntFunction<List<E>> operation) {
+        List<E> entityList = new ArrayList<>();
+        entities.forEach(entityList::add);
+        int count = 0;
+        for (int from = 0; from < entityList.size(); ) {
+            int size = CrudProvider.batchInsertBucketSize(entityList.size() - from);
+            count += operation.applyAsInt(entityList.subList(from, from + size));
+            from += size;
         }
+        return count;
+    }
+
+    @Override
+    public void upsert(E entity) {
+        CrudProvider.requireId(entity);
+        try {
+            getMapper().upsert(entity);
+        } finally {
+            invalidate(Collections.singletonList(entity.getId()));
+        }
+    }
+
+    @Override
+    public int upsert(Iterable<E> entities) {
+        // 执行前检查，避免部分分批已写入
+        entities.forEach(CrudProvider::requireId);
+        try {
+            return executeBucketed(entities, getMapper()::upsertBatch);
+        } finally {
+            invalidate(idsOf(entities));
+        }
+    }
+
+    @Override
+    public int[] create(Iterable<E> entities, BatchOptions options) {
+        try {
+            return executeBatch(entities, options.getBatchSize(), IMapper::insert);
+        } finally {
+            invalidate(idsOf(entities));
+        }
+    }
+
+    /**
+     * 在BATCH会话中逐个执行operation，每batchSize行flush一次
+     * notice: 与mybatis-spring集成时该会话加入当前Spring事务
+     *
+     * @return 每批影响的行数
+     */
+    protected int[] executeBatch(Iterable<E> entities, int batchSize, BiConsumer<IMapper<E, I, Q>, E> operation) {
+        if (sqlSessionFactory == null) {
+            throw new IllegalStateException("SqlSessionFactory unConfigured!");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        List<Integer> counts = new ArrayList<>();
+        try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+            IMapper<E, I, Q> batchMapper = sqlSession.getMapper(getMapperInterface());
+            int pending = 0;
+            for (E entity : entities) {
+                operation.accept(batchMapper, entity);
+                if (++pending == batchSize) {
+                    counts.add(flushStatements(sqlSession));
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                counts.add(flushStatements(sqlSession));
+            }
+            sqlSession.commit();
+        }
+        return counts.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int flushStatements(SqlSession sqlSession) {
+        int count = 0;
+        for (BatchResult batchResult : sqlSession.flushStatements()) {
+            for (int updateCount : batchResult.getUpdateCounts()) {
+                // 部分驱动批处理成功时不返回具体行数
+                count += updateCount == Statement.SUCCESS_NO_INFO ? 1 : updateCount;
+            }
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Class<? extends IMapper<E, I, Q>> getMapperInterface() {
+        if (mapperInterface == null) {
+            mapperInterface = (Class<? extends IMapper<E, I, Q>>) ClassUtils.getAllInterfaces(getMapper().getClass()).stream()
+                    .filter(clazz -> clazz != IMapper.class && IMapper.class.isAssignableFrom(clazz))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("Mapper interface not found: " + getMapper().getClass()));
+        }
+        return mapperInterface;
     }
 
     @Override
@@ -79,7 +459,7 @@ public abstract class AbstractMybatisDataService<E extends Persistable<I>, I ext
         try {
             getMapper().update(entity);
         } finally {
-            cache.clear();
+            invalidate(Collections.singletonList(entity.getId()));
         }
     }
 
@@ -88,8 +468,69 @@ public abstract class AbstractMybatisDataService<E extends Persistable<I>, I ext
         try {
             getMapper().patch(entity);
         } finally {
-            cache.clear();
+            invalidate(Collections.singletonList(entity.getId()));
+        }
+    }
+
+    @Override
+    public int update(Iterable<E> entities) {
+        return sum(update(entities, DEFAULT_BATCH_OPTIONS));
+    }
+
+    @Override
+    public int[] update(Iterable<E> entities, BatchOptions options) {
+        try {
+            return executeBatch(entities, options.getBatchSize(), IMapper::update);
+        } finally {
+            invalidate(idsOf(entities));
+        }
+    }
+
+    @Override
+    public int patch(Iterable<E> entities) {
+        return sum(patch(entities, DEFAULT_BATCH_OPTIONS));
+    }
+
+    @Override
+    public int[] patch(Iterable<E> entities, BatchOptions options) {
+        List<E> ordered = new ArrayList<>();
+        entities.forEach(ordered::add);
+        if (hasDistinctIds(ordered)) {
+            // BATCH执行器只合并连续的相同sql，分组后每种组合只产生一个JDBC批次
+            EntityStatementRegistry registry = EntityStatementRegistry.of(entityClass);
+            Map<BitSet, List<E>> groups = new LinkedHashMap<>();
+            for (E entity : ordered) {
+                groups.computeIfAbsent(registry.patchMaskOf(entity), mask -> new ArrayList<>()).add(entity);
+            }
+            ordered.clear();
+            groups.values().forEach(ordered::addAll);
+        }
+        try {
+            return executeBatch(ordered, options.getBatchSize(), IMapper::patch);
+        } finally {
+            invalidate(idsOf(ordered));
+        }
+    }
+
+    /**
+     * 同一id的多次patch必须保持原顺序，只有id互不相同时才能重排
+     */
+    private boolean hasDistinctIds(List<E> entities) {
+        Set<I> ids = new HashSet<>();
+        for (E entity : entities) {
+            if (entity.getId() == null || !ids.add(entity.getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int sum(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
         }
+        return total;
     }
 
     @Override
@@ -106,7 +547,20 @@ public abstract class AbstractMybatisDataService<E extends Persistable<I>, I ext
         try {
             getMapper().delete(id);
         } finally {
-            cache.clear();
+            invalidate(Collections.singletonList(id));
+        }
+    }
+
+    @Override
+    public int delete(Collection<I> ids) {
+        try {
+            int count = 0;
+            for (List<I> chunk : InListPadding.chunks(new ArrayList<>(new LinkedHashSet<>(ids)))) {
+                count += getMapper().deleteByIds(chunk);
+            }
+            return count;
+        } finally {
+            invalidate(ids);
         }
     }
 
@@ -121,13 +575,165 @@ public abstract class AbstractMybatisDataService<E extends Persistable<I>, I ext
 
     @Override
     public List<E> query(Q query) {
-        String queryKey = "query_" + CacheUtil.transformObjectToCacheKey(query);
-        return CacheWrapper.execute(cache, queryKey, () -> getMapper().query(query));
+        Object queryKey = queryCacheKey("query_", query);
+        return executeCached(queryKey, query, getMapper()::query);
     }
 
     @Override
     public long count(Q query) {
-        String queryKey = "count_" + CacheUtil.transformObjectToCacheKey(query);
-        return CacheWrapper.execute(cache, queryKey, () -> getMapper().count(query));
+        return executeCached(countCacheKey(query), query, getMapper()::count);
+    }
+
+    @Override
+    public Cursor<E> stream(Q query) {
+        return getMapper().stream(query);
+    }
+
+    @Override
+    public Cursor<E> stream(Q query, int fetchSize) {
+        return FetchSizeInterceptor.withFetchSize(fetchSize, () -> getMapper().stream(query));
+    }
+
+    @Override
+    public void forEach(Q query, Consumer<E> consumer) {
+        forEach(query, null, consumer);
+    }
+
+    @Override
+    public void forEach(Q query, int fetchSize, Consumer<E> consumer) {
+        forEach(query, Integer.valueOf(fetchSize), consumer);
+    }
+
+    /**
+     * 在独立会话中遍历：SqlSessionTemplate在事务外每次mapper调用后即关闭会话，其返回的Cursor无法遍历
+     * notice: 与mybatis-spring集成时该会话加入当前Spring事务；未配置SqlSessionFactory时使用getMapper()，需调用方保证会话
+     */
+    private void forEach(Q query, Integer fetchSize, Consumer<E> consumer) {
+        if (sqlSessionFactory == null) {
+            iterate(openCursor(getMapper(), query, fetchSize), consumer);
+            return;
+        }
+        try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+            iterate(openCursor(sqlSession.getMapper(getMapperInterface()), query, fetchSize), consumer);
+        }
+    }
+
+    private Cursor<E> openCursor(IMapper<E, I, Q> mapper, Q query, Integer fetchSize) {
+        return fetchSize == null ? mapper.stream(query) : FetchSizeInterceptor.withFetchSize(fetchSize, () -> mapper.stream(query));
+    }
+
+    private void iterate(Cursor<E> cursor, Consumer<E> consumer) {
+        try (Cursor<E> closeable = cursor) {
+            closeable.forEach(consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void forEachBatch(Q query, int batchSize, Consumer<List<E>> consumer) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        I lastId = null;
+        List<E> batch;
+        do {
+            batch = getMapper().queryAfterId(query, lastId, batchSize);
+            if (batch.isEmpty()) {
+                return;
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+            consumer.accept(batch);
+        } while (batch.size() == batchSize);
+    }
+
+    @Override
+    public List<E> parallelQuery(Q query, int partitions, Executor executor) {
+        List<CompletableFuture<List<E>>> futures = new ArrayList<>();
+        for (long[] range : splitIdRange(query, partitions)) {
+            futures.add(CompletableFuture.supplyAsync(() -> getMapper().queryInIdRange(query, range[0], range[1]), executor));
+        }
+        List<E> result = new ArrayList<>();
+        for (CompletableFuture<List<E>> future : futures) {
+            result.addAll(join(future));
+        }
+        return result;
+    }
+
+    @Override
+    public void parallelForEach(Q query, int partitions, Executor executor, Consumer<E> consumer) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (long[] range : splitIdRange(query, partitions)) {
+            futures.add(CompletableFuture.runAsync(() -> getMapper().queryInIdRange(query, range[0], range[1]).forEach(consumer), executor));
+        }
+        futures.forEach(AbstractMybatisDataService::join);
+    }
+
+    /**
+     * 将过滤后的id范围平均拆分为[fromId, toId]区间
+     */
+    private List<long[]> splitIdRange(Q query, int partitions) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be positive: " + partitions);
+        }
+        IdRange idRange = getMapper().idRange(query);
+        List<long[]> ranges = new ArrayList<>();
+        if (idRange == null || idRange.getMinId() == null) {
+            return ranges;
+        }
+        long min = idRange.getMinId();
+        long max = idRange.getMaxId();
+        long step = Math.max(1, (max - min) / partitions + 1);
+        for (long from = min; from <= max; from += step) {
+            ranges.add(new long[]{from, Math.min(max, from + step - 1)});
+            if (from > max - step) {
+                break;
+            }
+        }
+        return ranges;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public PageList<E> page(Q query) {
+        if (!singleStatementPage || !query.needPaging()) {
+            return MybatisDataService.super.page(query);
+        }
+        Object queryKey = queryCacheKey("page_", query);
+        return CacheWrapper.execute(cache, queryKey, () -> {
+            List<E> list = getMapper().queryWithTotal(query);
+            int countCap = QueryPlan.of(query.getClass()).countCapOf(query);
+            if (list instanceof TotalList && ((TotalList<E>) list).getTotal() != null) {
+                return PageList.of(list, ((TotalList<E>) list).getTotal(), countCap);
+            }
+            // 空页或未注册拦截器时退回count查询
+            Long total = query.deduceTotal(list.size());
+            return total != null ? new PageList<>(list, total) : PageList.of(list, count(query), countCap);
+        });
+    }
+
+    @Override
+    public CursorPageList<E> cursorPage(Q query) {
+        Object queryKey = queryCacheKey("cursor_", query);
+        return CacheWrapper.execute(cache, queryKey, () -> {
+            PageCursor pageCursor = PageCursor.of(query.getSort());
+            int limit = query.getPageSize() == null ? DEFAULT_PAGE_SIZE : query.getPageSize();
+            List<E> list = getMapper().queryByCursor(query, pageCursor.decode(query.getCursor()), limit);
+            String nextCursor = list.isEmpty() || list.size() < limit ? null : pageCursor.encode(list.get(list.size() - 1));
+            return new CursorPageList<>(list, nextCursor);
+        });
     }
 }
@@ -0,0 +1,19 @@
+package com.jianghu.winter.query.core;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * JDBC批处理选项
+ *
+ * @author daniel.hu
+ */
+@Getter
+@Builder
+public class BatchOptions {
+    /**
+     * 每多少行flush一次，内存占用以此为上限
+     */
+    @Builder.Default
+    private int batchSize = 1000;
+}
@@ -3,16 +3,11 @@ package com.jianghu.winter.query.core;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.RegExUtils;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.reflect.FieldUtils;
+import org.apache.ibatis.builder.annotation.ProviderContext;
 
-import javax.persistence.GeneratedValue;
-import javax.persistence.Table;
-import javax.persistence.Transient;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author daniel.hu
@@ -20,7 +15,11 @@ import java.util.stream.Collectors;
  */
 @Slf4j
 public class CrudProvider extends QueryProvider {
-    private final Map<Class<?>, String> insertSqlMap = new HashMap<>();
+    private static final String WHERE_ID = " WHERE id = #{id}";
+    /**
+     * 仅缓存这几种行数的多行sql，其余行数现场生成；最大分桶同时是单条语句的行数上限
+     */
+    static final int[] BATCH_INSERT_BUCKETS = {1, 8, 32, 128, 512};
 
     /**
      * delete
@@ -33,45 +32,83 @@ public class CrudProvider extends QueryProvider {
      * insert
      */
     public String buildInsert(Object entity) {
-        String insertSql = insertSqlMap.computeIfAbsent(entity.getClass(), entityClass -> buildInsert(entityClass));
+        String insertSql = EntityStatementRegistry.of(entity.getClass()).getInsertSql();
         log.debug(LOG_SQL, insertSql);
         return insertSql;
     }
 
     /**
      * batch insert
+     * notice: 仅缓存{@link #BATCH_INSERT_BUCKETS}大小的sql，调用方应按{@link #batchInsertBucketSize(int)}分批
      */
     public static String buildBatchInsert(Map map) {
         List<Object> entities = (List<Object>) map.get("list");
-        Class<?> clazz0 = entities.get(0).getClass();
-        List<Field> filteredFields = getFilteredFields(clazz0);
-        List<String> columnNames = getInsertColumnNames(filteredFields);
-        List<String> batchFieldValues = getBatchInsertFieldValues(filteredFields, entities.size());
-        return buildInsertSql(resolveTableName(clazz0), columnNames, StringUtils.join(batchFieldValues, ", "));
+        EntityStatementRegistry registry = EntityStatementRegistry.of(entities.get(0).getClass());
+        int size = entities.size();
+        if (Arrays.binarySearch(BATCH_INSERT_BUCKETS, size) < 0) {
+            return registry.buildBatchInsertSql(size);
+        }
+        return registry.getBatchInsertSql(size);
+    }
+
+    /**
+     * 不超过最大分桶的剩余行数一条语句写完，超过时按最大分桶拆分，
+     * 避免剩余行数被拆成多条小语句
+     *
+     * @param remaining 剩余待插入行数
+     * @return 下一条语句的行数
+     */
+    public static int batchInsertBucketSize(int remaining) {
+        return Math.max(1, Math.min(remaining, BATCH_INSERT_BUCKETS[BATCH_INSERT_BUCKETS.length - 1]));
+    }
+
+    /**
+     * upsert: 按id存在与否更新或插入，方言由当前数据源的databaseId决定，见{@link UpsertDialect#of(String)}
+     */
+    public String buildUpsert(Object entity, ProviderContext context) {
+        return upsertSql(entity, UpsertDialect.of(context.getDatabaseId()));
+    }
+
+    static String upsertSql(Object entity, UpsertDialect dialect) {
+        requireId(entity);
+        String upsertSql = EntityStatementRegistry.of(entity.getClass()).getUpsertSql(dialect);
+        log.debug(LOG_SQL, upsertSql);
+        return upsertSql;
+    }
+
+    /**
+     * batch upsert
+     * notice: 调用方应按{@link #batchInsertBucketSize(int)}分批
+     */
+    public static String buildBatchUpsert(Map map, ProviderContext context) {
+        return batchUpsertSql(map, UpsertDialect.of(context.getDatabaseId()));
     }
 
-    private static String buildInsert(Class<?> entityClass) {
-        List<Field> filteredFields = getFilteredFields(entityClass);
-        List<String> columnNames = getInsertColumnNames(filteredFields);
-        List<String> fieldValues = getInsertFieldValues(filteredFields);
-        return buildInsertSql(resolveTableName(entityClass), columnNames, "(" + StringUtils.join(fieldValues, ", ") + ")");
+    static String batchUpsertSql(Map map, UpsertDialect dialect) {
+        List<?> entities = (List<?>) map.get("list");
+        entities.forEach(CrudProvider::requireId);
+        EntityStatementRegistry registry = EntityStatementRegistry.of(entities.get(0).getClass());
+        int size = entities.size();
+        String upsertSql = Arrays.binarySearch(BATCH_INSERT_BUCKETS, size) < 0
+                ? registry.buildBatchUpsertSql(dialect, size) : registry.getBatchUpsertSql(dialect, size);
+        log.debug(LOG_SQL, upsertSql);
+        return upsertSql;
     }
 
-    private static String buildInsertSql(String tableName, List<String> columnNames, String fieldValues) {
-        ArrayList<String> insertList = new ArrayList<>();
-        insertList.add("INSERT INTO");
-        insertList.add(tableName);
-        insertList.add("(" + StringUtils.join(columnNames, ", ") + ")");
-        insertList.add("VALUES");
-        insertList.add(fieldValues);
-        return StringUtils.join(insertList, " ");
+    /**
+     * upsert以id判断冲突，id为null时无法匹配已有行
+     */
+    static void requireId(Object entity) {
+        if (entity instanceof Persistable && ((Persistable<?>) entity).getId() == null) {
+            throw new IllegalArgumentException("Upsert requires a non-null id: " + entity);
+        }
     }
 
     /**
      * update
      */
     public String buildUpdate(Object entity) {
-        String updateSql = buildUpdateSql(entity, Operation.UPDATE) + " WHERE id = #{id}";
+        String updateSql = EntityStatementRegistry.of(entity.getClass()).getUpdateSql() + WHERE_ID;
         log.debug(LOG_SQL, updateSql);
         return updateSql;
     }
@@ -80,7 +117,7 @@ public class CrudProvider extends QueryProvider {
      * patch
      */
     public String buildPatch(Object entity) {
-        String updateSql = buildUpdateSql(entity, Operation.PATCH) + " WHERE id = #{id}";
+        String updateSql = EntityStatementRegistry.of(entity.getClass()).getPatchSql(entity) + WHERE_ID;
         log.debug(LOG_SQL, updateSql);
         return updateSql;
     }
@@ -90,7 +127,7 @@ public class CrudProvider extends QueryProvider {
      * notice: When you have many parameters, use param1,param2... in order to avoid exceptions
      */
     public String buildPatchByQuery(Object entity, Object query) {
-        String updateSql = buildUpdateSql(entity, Operation.PATCH);
+        String updateSql = EntityStatementRegistry.of(entity.getClass()).getPatchSql(entity);
         updateSql = RegExUtils.replaceAll(updateSql, "#\\{", "#{param1.");
 
         String whereSql = super.buildWhereSql("", query);
@@ -98,77 +135,4 @@ public class CrudProvider extends QueryProvider {
         log.debug(LOG_SQL, updateSql + whereSql);
         return updateSql + whereSql;
     }
-
-    private String buildUpdateSql(Object entity, Operation operation) {
-        ArrayList<String> updateList = new ArrayList<>();
-        updateList.add("UPDATE");
-        updateList.add(resolveTableName(entity.getClass()));
-        updateList.add("SET");
-        updateList.add(buildUpdateOrPatchFields(entity, operation));
-        return StringUtils.join(updateList, " ");
-    }
-
-    private String buildUpdateOrPatchFields(Object entity, Operation operation) {
-        List<Field> filteredFields = getFilteredFields(entity.getClass());
-        List<String> updateFields = new LinkedList<>();
-        switch (operation) {
-            case UPDATE:
-                for (Field field : filteredFields) {
-                    updateFields.add(resolveColumnName(field) + " = " + "#{" + field.getName() + "}");
-                }
-                break;
-            case PATCH:
-                for (Field field : filteredFields) {
-                    Object value = readFieldValue(entity, field);
-                    if (value != null) {
-                        updateFields.add(resolveColumnName(field) + " = " + "#{" + field.getName() + "}");
-                    }
-                }
-                break;
-            default:
-        }
-        return StringUtils.join(updateFields, ", ");
-    }
-
-    private static List<Field> getFilteredFields(Class<?> entityClass) {
-        List<Field> allFields = FieldUtils.getAllFieldsList(entityClass);
-        return allFields.stream().filter(field -> !isIgnoredField(field)).collect(Collectors.toList());
-    }
-
-    private static List<String> getInsertColumnNames(List<Field> filteredFields) {
-        return filteredFields.stream().map(CrudProvider::resolveColumnName).collect(Collectors.toList());
-    }
-
-    private static List<String> getInsertFieldValues(List<Field> filteredFields) {
-        return filteredFields.stream().map(field -> "#{" + field.getName() + "}").collect(Collectors.toList());
-    }
-
-    private static List<String> getBatchInsertFieldValues(List<Field> filteredFields, int size) {
-        List<String> batchFieldValues = new ArrayList<>();
-        List<String> fieldValues = new ArrayList<>();
-        for (int i = 0; i < size; i++) {
-            for (Field field : filteredFields) {
-                String format = String.format("#{list[%d].%s}", i, field.getName());
-                fieldValues.add(format);
-            }
-            batchFieldValues.add("(" + StringUtils.join(fieldValues, ", ") + ")");
-            fieldValues.clear();
-        }
-        return batchFieldValues;
-    }
-
-    private static boolean isIgnoredField(Field field) {
-        return Modifier.isStatic(field.getModifiers())
-                || field.isAnnotationPresent(GeneratedValue.class)
-                || field.isAnnotationPresent(Transient.class);
-    }
-
-    private static String resolveTableName(Class<?> clazz) {
-        Table table = clazz.getDeclaredAnnotation(Table.class);
-        if (table == null) {
-            throw new IllegalStateException("@Table annotation unConfigured!");
-        }
-        return table.name();
-    }
-
 }
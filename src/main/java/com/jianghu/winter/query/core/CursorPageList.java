@@ -0,0 +1,21 @@
+package com.jianghu.winter.query.core;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ *
+ * @author daniel.hu
+ */
+@Getter
+@AllArgsConstructor
+public class CursorPageList<T> {
+    public final List<T> list;
+    /**
+     * 下一页游标，没有更多数据时为null
+     */
+    public final String nextCursor;
+}
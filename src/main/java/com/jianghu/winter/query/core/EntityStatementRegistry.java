@@ -0,0 +1,242 @@
+package com.jianghu.winter.query.core;
+
+import com.jianghu.winter.query.util.FieldAccessor;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+
+import javax.persistence.GeneratedValue;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体语句注册表
+ * 每个实体类只解析一次表名、字段及列名，INSERT、UPDATE及查询列直接复用，PATCH按非null字段位图缓存
+ * <p>
+ * notice: MyBatis每次调用非静态provider方法都会新建provider实例，因此缓存必须是静态且线程安全的
+ *
+ * @author daniel.hu
+ */
+public final class EntityStatementRegistry {
+    private static final Map<Class<?>, EntityStatementRegistry> REGISTRY = new ConcurrentHashMap<>();
+    /**
+     * 单个实体的PATCH模板上限，超出时整体淘汰
+     */
+    private static final int MAX_PATCH_TEMPLATES = 256;
+
+    private final Class<?> entityClass;
+    /**
+     * 未配置{@link Table}时为null，仅可使用查询列
+     */
+    private final String tableName;
+    /**
+     * 参与INSERT/UPDATE的字段（排除static、{@link GeneratedValue}及{@link Transient}）
+     */
+    private final List<FieldAccessor> fields;
+    private final List<String> columnNames;
+    private final String selectColumns;
+    private final String insertSql;
+    private final String updateSql;
+    private final Map<Integer, String> batchInsertTemplates = new ConcurrentHashMap<>();
+    private final Map<BitSet, String> patchTemplates = new ConcurrentHashMap<>();
+    /**
+     * key: 方言 + 行数，单行upsert行数为0
+     */
+    private final Map<String, String> upsertTemplates = new ConcurrentHashMap<>();
+
+    private EntityStatementRegistry(Class<?> entityClass) {
+        this.entityClass = entityClass;
+        Table table = entityClass.getDeclaredAnnotation(Table.class);
+        this.tableName = table == null ? null : table.name();
+        List<FieldAccessor> fieldList = new ArrayList<>();
+        List<String> columnList = new ArrayList<>();
+        for (Field field : FieldUtils.getAllFieldsList(entityClass)) {
+            if (!isIgnoredField(field)) {
+                fieldList.add(FieldAccessor.of(field));
+                columnList.add(QueryProvider.resolveColumnName(field));
+            }
+        }
+        this.fields = Collections.unmodifiableList(fieldList);
+        this.columnNames = Collections.unmodifiableList(columnList);
+        this.selectColumns = QueryProvider.buildSelectColumn(entityClass);
+        if (tableName == null) {
+            this.insertSql = null;
+            this.updateSql = null;
+        } else {
+            List<String> fieldValues = new ArrayList<>(fields.size());
+            for (FieldAccessor accessor : fields) {
+                fieldValues.add("#{" + accessor.getName() + "}");
+            }
+            this.insertSql = buildInsertSql("(" + StringUtils.join(fieldValues, ", ") + ")");
+            BitSet allFields = new BitSet(fields.size());
+            allFields.set(0, fields.size());
+            this.updateSql = buildUpdateSql(allFields);
+        }
+    }
+
+    public static EntityStatementRegistry of(Class<?> entityClass) {
+        return REGISTRY.computeIfAbsent(entityClass, EntityStatementRegistry::new);
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getTableName() {
+        if (tableName == null) {
+            throw new IllegalStateException("@Table annotation unConfigured!");
+        }
+        return tableName;
+    }
+
+    public List<FieldAccessor> getFields() {
+        return fields;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public String getSelectColumns() {
+        return selectColumns;
+    }
+
+    /**
+     * @return 如: INSERT INTO t_user (account, user_name) VALUES (#{account}, #{userName})
+     */
+    public String getInsertSql() {
+        getTableName();
+        return insertSql;
+    }
+
+    /**
+     * @return 不含where条件，如: UPDATE t_user SET account = #{account}, user_name = #{userName}
+     */
+    public String getUpdateSql() {
+        getTableName();
+        return updateSql;
+    }
+
+    /**
+     * @return 不含where条件，只更新entity中非null的字段
+     */
+    public String getPatchSql(Object entity) {
+        getTableName();
+        BitSet mask = patchMaskOf(entity);
+        String patchSql = patchTemplates.get(mask);
+        if (patchSql == null) {
+            if (patchTemplates.size() >= MAX_PATCH_TEMPLATES) {
+                patchTemplates.clear();
+            }
+            patchSql = patchTemplates.computeIfAbsent(mask, this::buildUpdateSql);
+        }
+        return patchSql;
+    }
+
+    /**
+     * 非null字段位图，第i位对应{@link #getFields()}的第i个字段
+     */
+    public BitSet patchMaskOf(Object entity) {
+        BitSet mask = new BitSet(fields.size());
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).get(entity) != null) {
+                mask.set(i);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 调用方需保证size的种类有限，见{@link CrudProvider#batchInsertBucketSize(int)}
+     */
+    public String getBatchInsertSql(int size) {
+        return batchInsertTemplates.computeIfAbsent(size, this::buildBatchInsertSql);
+    }
+
+    /**
+     * @return 如: INSERT INTO t_user (account) VALUES (#{list[0].account}), (#{list[1].account})
+     */
+    public String buildBatchInsertSql(int size) {
+        return buildInsertSql(buildValueRows(size, false));
+    }
+
+    /**
+     * 单行upsert，参数为实体本身，实体id不能为空
+     */
+    public String getUpsertSql(UpsertDialect dialect) {
+        return upsertTemplates.computeIfAbsent(dialect.name() + 0,
+                key -> dialect.build(getTableName(), columnNames, appendValueRow(new StringBuilder(), "", true).toString()));
+    }
+
+    /**
+     * 多行upsert，参数名为list，调用方需保证size的种类有限
+     */
+    public String getBatchUpsertSql(UpsertDialect dialect, int size) {
+        return upsertTemplates.computeIfAbsent(dialect.name() + size, key -> buildBatchUpsertSql(dialect, size));
+    }
+
+    public String buildBatchUpsertSql(UpsertDialect dialect, int size) {
+        return dialect.build(getTableName(), columnNames, buildValueRows(size, true));
+    }
+
+    /**
+     * @return 如: (#{list[0].account}), (#{list[1].account})
+     */
+    private String buildValueRows(int size, boolean withId) {
+        StringBuilder builder = new StringBuilder(size * (fields.size() + 1) * 24);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            appendValueRow(builder, "list[" + i + "].", withId);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param withId 是否以id作为首列
+     */
+    private StringBuilder appendValueRow(StringBuilder builder, String prefix, boolean withId) {
+        builder.append('(');
+        if (withId) {
+            builder.append("#{").append(prefix).append("id}");
+        }
+        for (int j = 0; j < fields.size(); j++) {
+            if (withId || j > 0) {
+                builder.append(", ");
+            }
+            builder.append("#{").append(prefix).append(fields.get(j).getName()).append('}');
+        }
+        return builder.append(')');
+    }
+
+    private String buildInsertSql(String fieldValues) {
+        return "INSERT INTO " + getTableName() + " (" + StringUtils.join(columnNames, ", ") + ") VALUES " + fieldValues;
+    }
+
+    private String buildUpdateSql(BitSet mask) {
+        StringBuilder builder = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+        boolean first = true;
+        for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1)) {
+            if (!first) {
+                builder.append(", ");
+            }
+            builder.append(columnNames.get(i)).append(" = #{").append(fields.get(i).getName()).append('}');
+            first = false;
+        }
+        return builder.toString();
+    }
+
+    private static boolean isIgnoredField(Field field) {
+        return Modifier.isStatic(field.getModifiers())
+                || field.isAnnotationPresent(GeneratedValue.class)
+                || field.isAnnotationPresent(Transient.class);
+    }
+}
@@ -0,0 +1,66 @@
+package com.jianghu.winter.query.core;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/**
+ * 单次调用的fetchSize：只作用于{@link #withFetchSize(int, Supplier)}内当前线程创建的语句，不影响全局defaultFetchSize
+ * <p>
+ * 用法：mybatis配置中注册 &lt;plugin interceptor="com.jianghu.winter.query.core.FetchSizeInterceptor"/&gt;，
+ * 未注册时使用全局配置
+ *
+ * @author daniel.hu
+ */
+@Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}))
+public class FetchSizeInterceptor implements Interceptor {
+    private static final ThreadLocal<Integer> FETCH_SIZE = new ThreadLocal<>();
+
+    /**
+     * 在action中创建的语句使用fetchSize
+     */
+    static <T> T withFetchSize(int fetchSize, Supplier<T> action) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("fetchSize must be positive: " + fetchSize);
+        }
+        Integer previous = FETCH_SIZE.get();
+        FETCH_SIZE.set(fetchSize);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                FETCH_SIZE.remove();
+            } else {
+                FETCH_SIZE.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object statement = invocation.proceed();
+        Integer fetchSize = FETCH_SIZE.get();
+        if (fetchSize != null && statement instanceof Statement) {
+            ((Statement) statement).setFetchSize(fetchSize);
+        }
+        return statement;
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+        // no properties
+    }
+}
@@ -1,8 +1,10 @@
 package com.jianghu.winter.query.core;
 
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -23,14 +25,97 @@ public interface IMapper<E extends Persistable<I>, I extends Serializable, Q ext
     @SelectProvider(type = QueryProvider.class, method = "buildCount")
     long count(Q query);
 
+    /**
+     * stream query, rows are fetched in batches of the configured defaultFetchSize (mybatis settings),
+     * or of a per-call fetch size when {@link FetchSizeInterceptor} is registered
+     * notice: the cursor must be consumed and closed before the session (transaction) ends
+     *
+     * @param query query
+     * @return cursor over the entities
+     */
+    @SelectProvider(type = QueryProvider.class, method = "buildSelect")
+    Cursor<E> stream(Q query);
+
+    /**
+     * query with the total of the filtered rows in one statement, requires {@link PageTotalInterceptor}
+     *
+     * @param query query
+     * @return {@link TotalList} when the interceptor is registered
+     */
+    @SelectProvider(type = QueryProvider.class, method = "buildSelectWithTotal")
+    List<E> queryWithTotal(Q query);
+
+    /**
+     * keyset pagination
+     *
+     * @param query        query
+     * @param cursorValues sort values of the last row of the previous page, null for the first page
+     * @param limit        page size
+     * @return entities after the cursor
+     */
+    @SelectProvider(type = QueryProvider.class, method = "buildCursorSelect")
+    List<E> queryByCursor(Q query, List<Object> cursorValues, int limit);
+
+    /**
+     * scan in id order, the session's local cache is flushed so that batches are not retained
+     *
+     * @param query  query
+     * @param lastId the last id of the previous batch, null for the first batch
+     * @param limit  batch size
+     * @return entities whose id is greater than lastId
+     */
+    @SelectProvider(type = QueryProvider.class, method = "buildScanSelect")
+    @Options(flushCache = Options.FlushCachePolicy.TRUE)
+    List<E> queryAfterId(Q query, I lastId, int limit);
+
+    /**
+     * min and max id of the filtered rows
+     *
+     * @param query query
+     * @return id range
+     */
+    @SelectProvider(type = QueryProvider.class, method = "buildIdRange")
+    IdRange idRange(Q query);
+
+    /**
+     * query in id range, the session's local cache is flushed so that partitions are not retained
+     *
+     * @param query  query
+     * @param fromId start id (inclusive)
+     * @param toId   end id (inclusive)
+     * @return entities in id order
+     */
+    @SelectProvider(type = QueryProvider.class, method = "buildRangeSelect")
+    @Options(flushCache = Options.FlushCachePolicy.TRUE)
+    List<E> queryInIdRange(Q query, long fromId, long toId);
+
     @Lang(MapperTableDriver.class)
     @Select("SELECT * FROM @{table} WHERE id = #{id}")
     E get(@Param("id") I id);
 
+    /**
+     * select by ids, the ids size should be bounded by the caller
+     *
+     * @param ids id 集合
+     */
+    @Lang(MapperTableDriver.class)
+    @Select("<script>SELECT * FROM @{table} WHERE id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    List<E> getByIds(@Param("ids") Collection<I> ids);
+
     @Lang(MapperTableDriver.class)
     @Delete("DELETE FROM @{table} WHERE id = #{id}")
     void delete(@Param("id") I id);
 
+    /**
+     * delete by ids, the ids size should be bounded by the caller
+     *
+     * @param ids id 集合
+     * @return delete count
+     */
+    @Lang(MapperTableDriver.class)
+    @Delete("<script>DELETE FROM @{table} WHERE id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int deleteByIds(@Param("ids") Collection<I> ids);
+
     /**
      * delete by query condition
      *
@@ -52,6 +137,22 @@ public interface IMapper<E extends Persistable<I>, I extends Serializable, Q ext
     @InsertProvider(type = CrudProvider.class, method = "buildBatchInsert")
     int batchInsert(@Param("list") Iterable<E> entities);
 
+    /**
+     * insert or update by id, the id must not be null
+     * dialect: {@link UpsertDialect#of(String)}
+     */
+    @InsertProvider(type = CrudProvider.class, method = "buildUpsert")
+    int upsert(E e);
+
+    /**
+     * batch upsert
+     *
+     * @param entities entity 集合
+     * @return affected count, depends on the database
+     */
+    @InsertProvider(type = CrudProvider.class, method = "buildBatchUpsert")
+    int upsertBatch(@Param("list") Iterable<E> entities);
+
     /**
      * update all fields, null value will be considered.
      *
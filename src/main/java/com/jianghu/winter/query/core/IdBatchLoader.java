@@ -0,0 +1,199 @@
+package com.jianghu.winter.query.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 按id合并请求
+ * 窗口期内（或达到maxBatchSize时）到达的load(id)合并为一次批量查询，相同id只查询一次，每个调用方得到各自的future
+ * 所有批量查询都在executor中执行：调度线程只负责计时，慢查询不会推迟之后的窗口；
+ * 调用方线程不执行查询，不会在调用方的事务中读取未提交的数据
+ * <p>
+ * 批次大小分布按2的幂分桶统计，见{@link #getBatchSizeHistogram()}
+ *
+ * @param <I> the type of the identifier
+ * @param <E> entity
+ * @author daniel.hu
+ */
+@Slf4j
+public class IdBatchLoader<I, E extends Persistable<I>> implements Closeable {
+    private final Function<List<I>, List<E>> batchFunction;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    /**
+     * executor由本实例创建时在close()中关闭
+     */
+    private final boolean ownsExecutor;
+    private final ConcurrentMap<Integer, LongAdder> batchSizeHistogram = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+    private Map<I, CompletableFuture<E>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> timer;
+    private boolean closed;
+
+    public IdBatchLoader(Function<List<I>, List<E>> batchFunction, long windowMillis, int maxBatchSize) {
+        this(batchFunction, windowMillis, maxBatchSize, null);
+    }
+
+    /**
+     * @param executor 执行批量查询，为null时使用本实例创建的线程池
+     */
+    public IdBatchLoader(Function<List<I>, List<E>> batchFunction, long windowMillis, int maxBatchSize, Executor executor) {
+        if (windowMillis < 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Invalid window or maxBatchSize: " + windowMillis + ", " + maxBatchSize);
+        }
+        this.batchFunction = batchFunction;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("id-batch-timer"));
+        this.ownsExecutor = executor == null;
+        this.executor = ownsExecutor ? Executors.newCachedThreadPool(daemonThreadFactory("id-batch-loader")) : executor;
+    }
+
+    /**
+     * @return id不存在时以null完成
+     * @throws IllegalStateException 已关闭
+     */
+    public CompletableFuture<E> load(I id) {
+        Map<I, CompletableFuture<E>> batch = null;
+        CompletableFuture<E> future;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("IdBatchLoader is closed");
+            }
+            future = pending.get(id);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            pending.put(id, future);
+            if (pending.size() >= maxBatchSize) {
+                batch = takePending();
+            } else if (pending.size() == 1) {
+                timer = scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (batch != null) {
+            submit(batch);
+        }
+        return future;
+    }
+
+    /**
+     * 立即将当前窗口内的请求交给executor查询，不等待查询完成
+     */
+    public void flush() {
+        Map<I, CompletableFuture<E>> batch;
+        synchronized (lock) {
+            batch = takePending();
+        }
+        submit(batch);
+    }
+
+    /**
+     * @return key为批次大小上限（1, 2, 4, 8...），value为批次数
+     */
+    public Map<Integer, Long> getBatchSizeHistogram() {
+        Map<Integer, Long> histogram = new TreeMap<>();
+        batchSizeHistogram.forEach((bucket, count) -> histogram.put(bucket, count.sum()));
+        return Collections.unmodifiableMap(histogram);
+    }
+
+    /**
+     * 之后的load(id)将抛出异常，已合并的请求仍会完成
+     */
+    @Override
+    public void close() {
+        Map<I, CompletableFuture<E>> batch;
+        synchronized (lock) {
+            closed = true;
+            batch = takePending();
+        }
+        submit(batch);
+        scheduler.shutdown();
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private Map<I, CompletableFuture<E>> takePending() {
+        Map<I, CompletableFuture<E>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        return batch;
+    }
+
+    /**
+     * executor拒绝时批次以异常完成，不在当前线程查询
+     */
+    private void submit(Map<I, CompletableFuture<E>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            executor.execute(() -> dispatch(batch));
+        } catch (RejectedExecutionException e) {
+            log.error("Batch load rejected: [size={}]", batch.size(), e);
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private void dispatch(Map<I, CompletableFuture<E>> batch) {
+        batchSizeHistogram.computeIfAbsent(bucketOf(batch.size()), key -> new LongAdder()).increment();
+        try {
+            Map<I, E> entities = new HashMap<>();
+            for (E entity : batchFunction.apply(new ArrayList<>(batch.keySet()))) {
+                entities.put(entity.getId(), entity);
+            }
+            batch.forEach((id, future) -> future.complete(entities.get(id)));
+        } catch (Throwable e) {
+            // Error同样需要完成future，否则调用方永久等待
+            log.error("Batch load failed: [size={}]", batch.size(), e);
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return 不小于size的最小2的幂
+     */
+    private static int bucketOf(int size) {
+        int bucket = Integer.highestOneBit(size);
+        return bucket == size ? size : bucket << 1;
+    }
+}
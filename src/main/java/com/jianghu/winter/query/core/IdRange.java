@@ -0,0 +1,16 @@
+package com.jianghu.winter.query.core;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * 过滤后的id范围，无数据时均为null
+ *
+ * @author daniel.hu
+ */
+@Getter
+@Setter
+public class IdRange {
+    private Long minId;
+    private Long maxId;
+}
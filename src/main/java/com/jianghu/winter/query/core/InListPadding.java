@@ -0,0 +1,47 @@
+package com.jianghu.winter.query.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * IN列表补齐：按分桶大小补齐参数个数，使同一语句只生成少数几种sql（getByIds、deleteByIds等）
+ * notice: 与批量插入的分桶（{@link CrudProvider#batchInsertBucketSize(int)}）相互独立
+ *
+ * @author daniel.hu
+ */
+final class InListPadding {
+    static final int[] BUCKETS = {1, 8, 32, 128, 512};
+    static final int MAX_SIZE = BUCKETS[BUCKETS.length - 1];
+
+    private InListPadding() {
+    }
+
+    /**
+     * @param count 实际个数
+     * @return 不小于count的最小分桶大小（最大为{@link #MAX_SIZE}）
+     */
+    static int paddedSize(int count) {
+        for (int bucket : BUCKETS) {
+            if (bucket >= count) {
+                return bucket;
+            }
+        }
+        return MAX_SIZE;
+    }
+
+    /**
+     * 按{@link #MAX_SIZE}分批，每批以最后一个元素补齐到分桶大小（IN中的重复值不影响结果）
+     */
+    static <T> List<List<T>> chunks(List<T> values) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < values.size(); from += MAX_SIZE) {
+            List<T> chunk = new ArrayList<>(values.subList(from, Math.min(from + MAX_SIZE, values.size())));
+            T last = chunk.get(chunk.size() - 1);
+            while (chunk.size() < paddedSize(chunk.size())) {
+                chunk.add(last);
+            }
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
@@ -1,7 +1,13 @@
 package com.jianghu.winter.query.core;
 
+import org.apache.ibatis.cursor.Cursor;
+
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -17,18 +23,87 @@ public interface MybatisDataService<E extends Persistable<I>, I extends Serializ
 
     E get(Q query);
 
+    /**
+     * 批量按id查询：优先读取id缓存，未命中的按IN分批查询并回填缓存
+     *
+     * @return key为id，不存在的id不包含在结果中
+     */
+    Map<I, E> getAll(Collection<I> ids);
+
     void create(E entity);
 
+    /**
+     * 多行insert，超过512行时拆分为多条语句执行
+     * notice: 拆分后不再是原子操作，需要时由调用方开启事务
+     *
+     * @return 插入行数
+     */
     int create(Iterable<E> entities);
 
+    /**
+     * JDBC批处理插入：复用单行insert语句，每{@link BatchOptions#getBatchSize()}行flush一次
+     *
+     * @return 每批插入的行数
+     */
+    int[] create(Iterable<E> entities, BatchOptions options);
+
+    /**
+     * 按id插入或更新，一次往返且无需先查询
+     * notice: id不能为空
+     */
+    void upsert(E entity);
+
+    /**
+     * 批量upsert，同{@link #create(Iterable)}，超过512行时拆分为多条语句执行，不保证原子性
+     *
+     * @return 影响行数（与数据库相关）
+     */
+    int upsert(Iterable<E> entities);
+
     void update(E entity);
 
+    /**
+     * JDBC批处理更新全部字段，缓存只失效一次
+     *
+     * @return 影响行数
+     */
+    int update(Iterable<E> entities);
+
+    /**
+     * 同{@link #update(Iterable)}，每{@link BatchOptions#getBatchSize()}行flush一次
+     *
+     * @return 每批影响的行数
+     */
+    int[] update(Iterable<E> entities, BatchOptions options);
+
     void patch(E entity);
 
+    /**
+     * JDBC批处理更新非null字段：id互不相同时按非null字段组合分组，同组复用同一条sql；
+     * 存在相同id时保持原顺序执行。缓存只失效一次
+     *
+     * @return 影响行数
+     */
+    int patch(Iterable<E> entities);
+
+    /**
+     * 同{@link #patch(Iterable)}，每{@link BatchOptions#getBatchSize()}行flush一次
+     *
+     * @return 每批影响的行数
+     */
+    int[] patch(Iterable<E> entities, BatchOptions options);
+
     int patch(E entity, Q query);
 
     void delete(I id);
 
+    /**
+     * 按id批量删除：分批IN删除，缓存只失效一次
+     *
+     * @return 删除行数
+     */
+    int delete(Collection<I> ids);
+
     int delete(Q query);
 
     List<E> query(Q query);
@@ -39,12 +114,76 @@ public interface MybatisDataService<E extends Persistable<I>, I extends Serializ
 
     long count(Q query);
 
+    /**
+     * 流式查询，内存占用与结果行数无关
+     * notice: 返回的Cursor需在同一事务（会话）内消费并关闭
+     */
+    Cursor<E> stream(Q query);
+
+    /**
+     * 同{@link #stream(PageQuery)}，每次从数据库读取fetchSize行，需注册{@link FetchSizeInterceptor}
+     */
+    Cursor<E> stream(Q query, int fetchSize);
+
+    /**
+     * 流式遍历，在独立会话中执行，遍历结束后关闭Cursor
+     */
+    void forEach(Q query, Consumer<E> consumer);
+
+    /**
+     * 同{@link #forEach(PageQuery, Consumer)}，每次从数据库读取fetchSize行，需注册{@link FetchSizeInterceptor}
+     */
+    void forEach(Q query, int fetchSize, Consumer<E> consumer);
+
+    /**
+     * 按id顺序分批遍历（keyset），不执行count，总开销与表大小线性相关
+     * notice: 忽略query的分页及排序
+     *
+     * @param batchSize 每批数量
+     * @param consumer  每批数据，最后一批可能不足batchSize
+     */
+    void forEachBatch(Q query, int batchSize, Consumer<List<E>> consumer);
+
+    /**
+     * 按id区间并行查询：读取过滤后的最小、最大id，拆分为partitions段分别查询，结果按id顺序合并
+     * notice: 各段在executor线程中执行，mapper需线程安全且每次调用使用独立会话（如Spring的SqlSessionTemplate）；
+     * 忽略query的分页及排序
+     */
+    List<E> parallelQuery(Q query, int partitions, Executor executor);
+
+    /**
+     * 按id区间并行遍历，同{@link #parallelQuery}
+     * notice: consumer会被多个线程并发调用
+     */
+    void parallelForEach(Q query, int partitions, Executor executor, Consumer<E> consumer);
+
+    /**
+     * 当前页未满时由行数推断总数，仅在无法推断时执行count
+     */
     default PageList<E> page(Q query) {
-        return new PageList<>(query(query), count(query));
+        List<E> list = query(query);
+        Long total = query.deduceTotal(list.size());
+        if (total != null) {
+            return new PageList<>(list, total);
+        }
+        return PageList.of(list, count(query), QueryPlan.of(query.getClass()).countCapOf(query));
     }
 
     default <V> PageList<V> page(Q query, Function<E, V> transfer) {
-        return new PageList<>(query(query, transfer), count(query));
+        PageList<E> page = page(query);
+        return new PageList<>(page.list.stream().map(transfer).collect(Collectors.toList()), page.total, page.totalIsLowerBound);
+    }
+
+    /**
+     * keyset pagination, the latency of deep pages stays flat
+     *
+     * @param query sort fields must be in the same direction, and {@link PageQuery#getCursor()} is the nextCursor of the previous page
+     */
+    CursorPageList<E> cursorPage(Q query);
+
+    default <V> CursorPageList<V> cursorPage(Q query, Function<E, V> transfer) {
+        CursorPageList<E> page = cursorPage(query);
+        return new CursorPageList<>(page.list.stream().map(transfer).collect(Collectors.toList()), page.nextCursor);
     }
 
 }
@@ -10,5 +10,5 @@ import lombok.NoArgsConstructor;
 @Getter
 @NoArgsConstructor
 public enum Operation {
-    SELECT, COUNT, DELETE, UPDATE, PATCH
+    SELECT, COUNT, DELETE, UPDATE, PATCH, KEYSET, SELECT_WITH_TOTAL, SCAN, ID_RANGE, RANGE_SCAN
 }
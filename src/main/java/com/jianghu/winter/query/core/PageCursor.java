@@ -0,0 +1,186 @@
+package com.jianghu.winter.query.core;
+
+import com.jianghu.winter.query.util.FieldAccessor;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 游标分页（keyset）
+ * 按排序列及id定位上一页最后一行，生成 (sort_col, id) > (?, ?) 语义的条件，避免深分页时 LIMIT offset 的扫描开销
+ * <p>
+ * 排序格式同{@link PageQuery#getSort()}：field1,desc;field2,desc，所有排序列方向必须一致，末尾自动补充id
+ *
+ * @author daniel.hu
+ */
+public final class PageCursor {
+    private static final String ID_COLUMN = "id";
+
+    private final List<String> columns;
+    private final boolean descending;
+
+    private PageCursor(List<String> columns, boolean descending) {
+        this.columns = columns;
+        this.descending = descending;
+    }
+
+    public static PageCursor of(String sort) {
+        List<String> columns = new ArrayList<>();
+        Boolean descending = null;
+        if (StringUtils.isNotBlank(sort)) {
+            for (String item : StringUtils.split(sort, ';')) {
+                String[] pair = StringUtils.split(item.trim(), ", ");
+                boolean desc = pair.length > 1 && "desc".equalsIgnoreCase(pair[1]);
+                if (descending != null && descending != desc) {
+                    throw new IllegalArgumentException("Keyset paging requires all sort fields in the same direction: " + sort);
+                }
+                descending = desc;
+                columns.add(pair[0]);
+            }
+        }
+        if (columns.isEmpty() || !ID_COLUMN.equalsIgnoreCase(columns.get(columns.size() - 1))) {
+            columns.add(ID_COLUMN);
+        }
+        return new PageCursor(Collections.unmodifiableList(columns), descending != null && descending);
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * 展开为逐列比较，等价于行值比较 (sort_col, id) > (?, ?)，但不依赖数据库对行值构造器参数的类型推断
+     *
+     * @param paramName 游标值参数名，如 param2
+     * @return 如: (user_name > #{param2[0]} OR (user_name = #{param2[0]} AND id > #{param2[1]}))
+     */
+    public String buildSeekSql(String paramName) {
+        String operator = descending ? " < " : " > ";
+        int last = columns.size() - 1;
+        String seekSql = columns.get(last) + operator + "#{" + paramName + "[" + last + "]}";
+        for (int i = last - 1; i >= 0; i--) {
+            String param = "#{" + paramName + "[" + i + "]}";
+            seekSql = "(" + columns.get(i) + operator + param + " OR (" + columns.get(i) + " = " + param + " AND " + seekSql + "))";
+        }
+        return seekSql;
+    }
+
+    public String buildOrderSql() {
+        String direction = descending ? " DESC" : " ASC";
+        return " ORDER BY " + StringUtils.join(columns, direction + ", ") + direction;
+    }
+
+    /**
+     * 以最后一行的排序列值生成下一页游标
+     */
+    public String encode(Object lastRow) {
+        List<Field> fields = FieldUtils.getAllFieldsList(lastRow.getClass());
+        StringBuilder builder = new StringBuilder();
+        for (String column : columns) {
+            Field field = fields.stream()
+                    .filter(f -> column.equalsIgnoreCase(QueryProvider.resolveColumnName(f)))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("No field mapped to sort column: " + column));
+            appendValue(builder, FieldAccessor.of(field).get(lastRow));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return 游标为空时返回null（首页）
+     */
+    public List<Object> decode(String cursor) {
+        if (StringUtils.isEmpty(cursor)) {
+            return null;
+        }
+        List<Object> values = new ArrayList<>(columns.size());
+        try {
+            String text = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int index = 0;
+            while (index < text.length()) {
+                char type = text.charAt(index);
+                int colon = text.indexOf(':', index);
+                int length = Integer.parseInt(text.substring(index + 1, colon));
+                values.add(parseValue(type, text.substring(colon + 1, colon + 1 + length)));
+                index = colon + 1 + length;
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+        if (values.size() != columns.size()) {
+            throw new IllegalArgumentException("Cursor does not match the sort: " + cursor);
+        }
+        return values;
+    }
+
+    /**
+     * 编码格式：类型 + 长度 + ':' + 值
+     */
+    private static void appendValue(StringBuilder builder, Object value) {
+        String text;
+        char type;
+        if (value == null) {
+            throw new IllegalArgumentException("Keyset paging does not support null sort values");
+        } else if (value instanceof Integer) {
+            type = 'I';
+            text = value.toString();
+        } else if (value instanceof Long) {
+            type = 'L';
+            text = value.toString();
+        } else if (value instanceof String) {
+            type = 'S';
+            text = (String) value;
+        } else if (value instanceof BigDecimal) {
+            type = 'B';
+            text = value.toString();
+        } else if (value instanceof Boolean) {
+            type = 'Z';
+            text = value.toString();
+        } else if (value instanceof Date) {
+            type = 'D';
+            text = String.valueOf(((Date) value).getTime());
+        } else if (value instanceof LocalDateTime) {
+            type = 'T';
+            text = value.toString();
+        } else if (value instanceof LocalDate) {
+            type = 'A';
+            text = value.toString();
+        } else {
+            throw new IllegalArgumentException("Unsupported sort value type for keyset paging: " + value.getClass());
+        }
+        builder.append(type).append(text.length()).append(':').append(text);
+    }
+
+    private static Object parseValue(char type, String text) {
+        switch (type) {
+            case 'I':
+                return Integer.valueOf(text);
+            case 'L':
+                return Long.valueOf(text);
+            case 'S':
+                return text;
+            case 'B':
+                return new BigDecimal(text);
+            case 'Z':
+                return Boolean.valueOf(text);
+            case 'D':
+                return new Date(Long.parseLong(text));
+            case 'T':
+                return LocalDateTime.parse(text);
+            case 'A':
+                return LocalDate.parse(text);
+            default:
+                throw new IllegalArgumentException("Unknown cursor value type: " + type);
+        }
+    }
+}
@@ -14,4 +14,19 @@ import java.util.List;
 public class PageList<T> {
     public final List<T> list;
     public final long total;
+    /**
+     * 总数达到count上限时为true，此时total仅为下限
+     */
+    public final boolean totalIsLowerBound;
+
+    public PageList(List<T> list, long total) {
+        this(list, total, false);
+    }
+
+    /**
+     * @param countCap count上限，0为不限制
+     */
+    static <T> PageList<T> of(List<T> list, long total, int countCap) {
+        return new PageList<>(list, total, countCap > 0 && total >= countCap);
+    }
 }
@@ -30,6 +30,18 @@ public class PageQuery implements Serializable{
     @Pattern(regexp = REGEX_SORT, message = "Sorting field format error")
     private String sort;
 
+    /**
+     * 游标分页（keyset）：上一页返回的nextCursor，首页为空
+     */
+    @ApiModelProperty(value = "Cursor returned by the previous page, empty for the first page")
+    private String cursor;
+
+    /**
+     * count上限，只能调低{@link com.jianghu.winter.query.annotation.QueryTable#countCap()}，0或负数时使用注解配置
+     */
+    @ApiModelProperty(value = "Upper bound of the count, the total is a lower bound when reached")
+    private Integer countCap;
+
     public Integer getPageNumber() {
         return getOrDefault(pageNumber, 0, pageSize == null);
     }
@@ -56,4 +68,24 @@ public class PageQuery implements Serializable{
     public boolean needPaging() {
         return pageNumber != null || pageSize != null;
     }
+
+    /**
+     * 根据当前页的行数推断总数，无法推断时返回null（需执行count）
+     * 1.未分页：总数即行数
+     * 2.非空且未满的页：总数为 offset + 行数
+     * 3.首页为空：总数为0
+     */
+    public Long deduceTotal(int rows) {
+        if (!needPaging()) {
+            return (long) rows;
+        }
+        int size = getPageSize();
+        if (size <= 0) {
+            return null;
+        }
+        if (rows > 0 && rows < size) {
+            return (long) getOffset() + rows;
+        }
+        return rows == 0 && getOffset() == 0 ? 0L : null;
+    }
 }
@@ -0,0 +1,105 @@
+package com.jianghu.winter.query.core;
+
+import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.*;
+import org.apache.ibatis.reflection.SystemMetaObject;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 单条sql分页：读取{@link QueryProvider#buildSelectWithTotal}末尾的总数列，并对MyBatis结果映射隐藏该列
+ * <p>
+ * 用法：mybatis配置中注册 &lt;plugin interceptor="com.jianghu.winter.query.core.PageTotalInterceptor"/&gt;，
+ * 未注册时{@link IMapper#queryWithTotal}返回普通List，分页退回查询+count两条sql
+ *
+ * @author daniel.hu
+ */
+@Intercepts(@Signature(type = ResultSetHandler.class, method = "handleResultSets", args = Statement.class))
+public class PageTotalInterceptor implements Interceptor {
+    static final String STATEMENT_SUFFIX = ".queryWithTotal";
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (!(invocation.getTarget() instanceof DefaultResultSetHandler)) {
+            return invocation.proceed();
+        }
+        MappedStatement mappedStatement = (MappedStatement) SystemMetaObject.forObject(invocation.getTarget()).getValue("mappedStatement");
+        if (!mappedStatement.getId().endsWith(STATEMENT_SUFFIX)) {
+            return invocation.proceed();
+        }
+        TotalCapture totalCapture = new TotalCapture();
+        Object[] args = invocation.getArgs();
+        args[0] = proxy(Statement.class, args[0], totalCapture);
+        List<?> list = (List<?>) invocation.proceed();
+        return new TotalList<>(list, totalCapture.total);
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+        // no properties
+    }
+
+    private static Object proxy(Class<?> type, Object target, TotalCapture totalCapture) {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Object result = invoke(target, method, args);
+            return totalCapture.intercept(method, result, target);
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * 总数列位于最后一列：元数据中列数减一，首次next()时读取总数
+     */
+    private static final class TotalCapture {
+        private Long total;
+
+        Object intercept(Method method, Object result, Object target) throws Throwable {
+            switch (method.getName()) {
+                case "getResultSet":
+                    return result == null ? null : proxy(ResultSet.class, result, this);
+                case "getMetaData":
+                    if (result instanceof ResultSetMetaData) {
+                        return hideLastColumn((ResultSetMetaData) result);
+                    }
+                    return result;
+                case "next":
+                    if (total == null && Boolean.TRUE.equals(result)) {
+                        ResultSet resultSet = (ResultSet) target;
+                        total = resultSet.getLong(resultSet.getMetaData().getColumnCount());
+                    }
+                    return result;
+                default:
+                    return result;
+            }
+        }
+
+        private static ResultSetMetaData hideLastColumn(ResultSetMetaData metaData) {
+            return (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(), new Class<?>[]{ResultSetMetaData.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(metaData, method, args);
+                        return "getColumnCount".equals(method.getName()) ? (Integer) result - 1 : result;
+                    });
+        }
+    }
+}
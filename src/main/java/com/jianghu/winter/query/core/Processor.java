@@ -20,11 +20,25 @@ public interface Processor {
      */
     void process(List<String> whereList, String columnName, String fieldName, Object fieldValue);
 
+    /**
+     * 与字段值无关的sql片段，编译{@link QueryPlan}时预先生成
+     *
+     * @return 需要根据字段值生成时返回null
+     */
+    default String fragment(String columnName, String fieldName) {
+        return null;
+    }
+
 
     class DefaultProcessor implements Processor {
         @Override
         public void process(List<String> whereList, String columnName, String fieldName, Object fieldValue) {
-            whereList.add(columnName + " = " + "#{" + fieldName + "}");
+            whereList.add(fragment(columnName, fieldName));
+        }
+
+        @Override
+        public String fragment(String columnName, String fieldName) {
+            return columnName + " = " + "#{" + fieldName + "}";
         }
     }
 
@@ -34,7 +48,12 @@ public interface Processor {
 
         @Override
         public void process(List<String> whereList, String columnName, String fieldName, Object fieldValue) {
-            whereList.add(columnName + suffixEnum.getValue() + "#{" + fieldName + "}");
+            whereList.add(fragment(columnName, fieldName));
+        }
+
+        @Override
+        public String fragment(String columnName, String fieldName) {
+            return columnName + suffixEnum.getValue() + "#{" + fieldName + ",typeHandler=" + LikeTypeHandler.class.getName() + "}";
         }
     }
 
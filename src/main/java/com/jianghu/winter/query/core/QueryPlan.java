@@ -0,0 +1,141 @@
+package com.jianghu.winter.query.core;
+
+import com.jianghu.winter.query.annotation.QueryField;
+import com.jianghu.winter.query.annotation.QueryTable;
+import com.jianghu.winter.query.util.FieldAccessor;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Query类的编译结果
+ * 每个Query类只解析一次字段、列名、处理器及{@link QueryField}片段，之后的调用只需读取字段值并拼接
+ *
+ * @author daniel.hu
+ */
+@Getter
+public class QueryPlan {
+    private static final Map<Class<?>, QueryPlan> PLAN_REGISTRY = new ConcurrentHashMap<>();
+
+    private final Class<?> queryClass;
+    /**
+     * 未配置{@link QueryTable}时为null（如patchByQuery仅使用where条件）
+     */
+    private final QueryTable queryTable;
+    private final String selectColumns;
+    private final List<Condition> conditions;
+
+    private QueryPlan(Class<?> queryClass) {
+        this.queryClass = queryClass;
+        this.queryTable = queryClass.getAnnotation(QueryTable.class);
+        this.selectColumns = queryTable == null ? null : EntityStatementRegistry.of(queryTable.entity()).getSelectColumns();
+        List<Condition> conditionList = new ArrayList<>();
+        for (Field field : queryClass.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                continue;
+            }
+            Condition condition = compile(field);
+            if (condition != null) {
+                conditionList.add(condition);
+            }
+        }
+        this.conditions = Collections.unmodifiableList(conditionList);
+    }
+
+    public static QueryPlan of(Class<?> queryClass) {
+        return PLAN_REGISTRY.computeIfAbsent(queryClass, QueryPlan::new);
+    }
+
+    public QueryTable requireQueryTable() {
+        if (queryTable == null) {
+            throw new IllegalStateException("@QueryTable annotation unConfigured!");
+        }
+        return queryTable;
+    }
+
+    /**
+     * count上限，0为不限制
+     * {@link PageQuery#getCountCap()}来自调用方，只能调低{@link QueryTable#countCap()}，不能取消或调高
+     */
+    public int countCapOf(Object query) {
+        int tableCap = queryTable == null ? 0 : Math.max(0, queryTable.countCap());
+        Integer requestedCap = query instanceof PageQuery ? ((PageQuery) query).getCountCap() : null;
+        if (requestedCap == null || requestedCap <= 0) {
+            return tableCap;
+        }
+        return tableCap > 0 ? Math.min(requestedCap, tableCap) : requestedCap;
+    }
+
+    /**
+     * 查询形态，见{@link SqlTemplateCache.ShapeKey}
+     */
+    public int[] shapeOf(Object query) {
+        int[] shape = new int[conditions.size()];
+        for (int i = 0; i < shape.length; i++) {
+            Object fieldValue = conditions.get(i).readValue(query);
+            if (fieldValue == null) {
+                shape[i] = -1;
+            } else if (fieldValue instanceof Collection) {
+                shape[i] = ((Collection<?>) fieldValue).size();
+            }
+        }
+        return shape;
+    }
+
+    private static Condition compile(Field field) {
+        FieldAccessor accessor = FieldAccessor.of(field);
+        String fieldName = field.getName();
+        QueryField queryField = field.getAnnotation(QueryField.class);
+        if (queryField != null) {
+            String andSql = queryField.and();
+            return StringUtils.isNotBlank(andSql) ? new Condition(accessor, fieldName, null, null, andSql) : null;
+        }
+        QuerySuffixEnum suffixEnum = QuerySuffixEnum.resolve(fieldName);
+        String columnName = CommonUtil.camelCaseToUnderscore(suffixEnum.resolveColumnName(fieldName));
+        Processor processor = QueryProvider.resolveProcessor(suffixEnum);
+        return new Condition(accessor, fieldName, columnName, processor, processor.fragment(columnName, fieldName));
+    }
+
+    /**
+     * 单个查询字段的编译结果
+     */
+    @Getter
+    public static final class Condition {
+        private final FieldAccessor accessor;
+        private final String fieldName;
+        private final String columnName;
+        private final Processor processor;
+        /**
+         * 与字段值无关的sql片段，为null时每次调用{@link Processor#process}
+         */
+        private final String fragment;
+
+        Condition(FieldAccessor accessor, String fieldName, String columnName, Processor processor, String fragment) {
+            this.accessor = accessor;
+            this.fieldName = fieldName;
+            this.columnName = columnName;
+            this.processor = processor;
+            this.fragment = fragment;
+        }
+
+        public Object readValue(Object query) {
+            return accessor.get(query);
+        }
+
+        public void appendTo(List<String> whereList, Object fieldValue) {
+            if (fragment != null) {
+                whereList.add(fragment);
+            } else {
+                processor.process(whereList, columnName, fieldName, fieldValue);
+            }
+        }
+    }
+}
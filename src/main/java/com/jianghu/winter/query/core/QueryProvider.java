@@ -1,8 +1,9 @@
 package com.jianghu.winter.query.core;
 
-import com.jianghu.winter.query.annotation.QueryField;
 import com.jianghu.winter.query.annotation.QueryTable;
+import com.jianghu.winter.query.util.FieldAccessor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.RegExUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.reflect.FieldUtils;
 
@@ -21,7 +22,9 @@ import java.util.stream.Collectors;
 @Slf4j
 public class QueryProvider {
     protected static final String LOG_SQL = "\nSQL: {}";
+    static final String TOTAL_COLUMN = "total_rows__";
     private static final Map<String, Processor> suffixProcessorMap = new ConcurrentHashMap<>();
+    private static final SqlTemplateCache sqlTemplateCache = new SqlTemplateCache(2048);
 
     static {
         suffixProcessorMap.put("defaultProcessor", new Processor.DefaultProcessor());
@@ -38,16 +41,99 @@ public class QueryProvider {
     }
 
     /**
-     * 动态拼接查询sql
+     * 单条sql分页：末尾附加总数列，由{@link PageTotalInterceptor}读取
+     */
+    public String buildSelectWithTotal(Object query) {
+        return build(query, Operation.SELECT_WITH_TOTAL);
+    }
+
+    /**
+     * 游标分页（keyset）查询
+     * notice: 参数依次为 param1(query)、param2(游标值，首页为null)、param3(limit)
+     */
+    public String buildCursorSelect(Object query, List<Object> cursorValues, int limit) {
+        QueryPlan queryPlan = QueryPlan.of(query.getClass());
+        String sort = query instanceof PageQuery ? ((PageQuery) query).getSort() : null;
+        SqlTemplateCache.ShapeKey shapeKey = new SqlTemplateCache.ShapeKey(query.getClass(), Operation.KEYSET, queryPlan.shapeOf(query),
+                sort, cursorValues != null, 0);
+        String selectSql = sqlTemplateCache.get(shapeKey, () -> {
+            PageCursor pageCursor = PageCursor.of(sort);
+            String whereSql = RegExUtils.replaceAll(buildWhereSql("", query), "#\\{", "#{param1.");
+            if (cursorValues != null) {
+                whereSql += (whereSql.isEmpty() ? " WHERE " : " AND ") + pageCursor.buildSeekSql("param2");
+            }
+            return buildStartSql(queryPlan, Operation.KEYSET, whereSql, 0) + whereSql + pageCursor.buildOrderSql() + " LIMIT #{param3}";
+        });
+        log.debug(LOG_SQL, selectSql);
+        return selectSql;
+    }
+
+    /**
+     * 按id顺序分批扫描
+     * notice: 参数依次为 param1(query)、param2(上一批最后的id，首批为null)、param3(limit)
+     */
+    public String buildScanSelect(Object query, Object lastId, int limit) {
+        QueryPlan queryPlan = QueryPlan.of(query.getClass());
+        SqlTemplateCache.ShapeKey shapeKey = new SqlTemplateCache.ShapeKey(query.getClass(), Operation.SCAN, queryPlan.shapeOf(query),
+                null, lastId != null, 0);
+        String selectSql = sqlTemplateCache.get(shapeKey, () -> {
+            String whereSql = RegExUtils.replaceAll(buildWhereSql("", query), "#\\{", "#{param1.");
+            if (lastId != null) {
+                whereSql += (whereSql.isEmpty() ? " WHERE " : " AND ") + "id > #{param2}";
+            }
+            return buildStartSql(queryPlan, Operation.SCAN, whereSql, 0) + whereSql + " ORDER BY id LIMIT #{param3}";
+        });
+        log.debug(LOG_SQL, selectSql);
+        return selectSql;
+    }
+
+    public String buildIdRange(Object query) {
+        return build(query, Operation.ID_RANGE);
+    }
+
+    /**
+     * 按id区间查询
+     * notice: 参数依次为 param1(query)、param2(起始id，包含)、param3(结束id，包含)
+     */
+    public String buildRangeSelect(Object query, long fromId, long toId) {
+        QueryPlan queryPlan = QueryPlan.of(query.getClass());
+        SqlTemplateCache.ShapeKey shapeKey = new SqlTemplateCache.ShapeKey(query.getClass(), Operation.RANGE_SCAN, queryPlan.shapeOf(query),
+                null, false, 0);
+        String selectSql = sqlTemplateCache.get(shapeKey, () -> {
+            String whereSql = RegExUtils.replaceAll(buildWhereSql("", query), "#\\{", "#{param1.");
+            whereSql += (whereSql.isEmpty() ? " WHERE " : " AND ") + "id >= #{param2} AND id <= #{param3}";
+            return buildStartSql(queryPlan, Operation.RANGE_SCAN, whereSql, 0) + whereSql + " ORDER BY id";
+        });
+        log.debug(LOG_SQL, selectSql);
+        return selectSql;
+    }
+
+    public static SqlTemplateCache getSqlTemplateCache() {
+        return sqlTemplateCache;
+    }
+
+    /**
+     * 动态拼接查询sql，相同查询形态直接复用缓存的sql
      */
     protected String build(Object query, Operation operation) {
-        String selectSql = buildStartSql(query, operation);
-        selectSql = buildWhereSql(selectSql, query);
-        if (operation == Operation.SELECT && query instanceof PageQuery) {
-            PageQuery pageQuery = (PageQuery) query;
-            selectSql = buildSortSql(selectSql, pageQuery);
-            selectSql = buildPageSql(selectSql, pageQuery);
-        }
+        QueryPlan queryPlan = QueryPlan.of(query.getClass());
+        boolean select = operation == Operation.SELECT || operation == Operation.SELECT_WITH_TOTAL;
+        PageQuery pageQuery = select && query instanceof PageQuery ? (PageQuery) query : null;
+        int countCap = operation == Operation.COUNT || operation == Operation.SELECT_WITH_TOTAL ? queryPlan.countCapOf(query) : 0;
+        SqlTemplateCache.ShapeKey shapeKey = new SqlTemplateCache.ShapeKey(query.getClass(), operation, queryPlan.shapeOf(query),
+                pageQuery == null ? null : pageQuery.getSort(), pageQuery != null && pageQuery.needPaging(), countCap);
+        String selectSql = sqlTemplateCache.get(shapeKey, () -> {
+            String whereSql = buildWhereSql("", query);
+            if (operation == Operation.COUNT) {
+                return buildCountSql(queryPlan.requireQueryTable().table(), whereSql, countCap);
+            }
+            String sql = buildStartSql(queryPlan, operation, whereSql, countCap) + whereSql;
+            if (pageQuery != null) {
+                sql = buildSortSql(sql, pageQuery);
+                sql = buildPageSql(sql, pageQuery);
+            }
+            return sql;
+        });
         log.debug(LOG_SQL, selectSql);
         return selectSql;
     }
@@ -55,18 +141,23 @@ public class QueryProvider {
     /**
      * 构建开始sql
      */
-    private String buildStartSql(Object query, Operation operation) {
-        QueryTable queryTable = query.getClass().getAnnotation(QueryTable.class);
-        if (queryTable == null) {
-            throw new IllegalStateException("@QueryTable annotation unConfigured!");
-        }
+    private String buildStartSql(QueryPlan queryPlan, Operation operation, String whereSql, int countCap) {
+        QueryTable queryTable = queryPlan.requireQueryTable();
         String startSql = "";
         switch (operation) {
             case SELECT:
-                startSql = "SELECT " + buildSelectColumn(queryTable.entity());
+            case KEYSET:
+            case SCAN:
+            case RANGE_SCAN:
+                startSql = "SELECT " + queryPlan.getSelectColumns();
                 break;
-            case COUNT:
-                startSql = "SELECT COUNT(*)";
+            case SELECT_WITH_TOTAL:
+                // 非关联标量子查询只计算一次，与COUNT(*) OVER()开销相当且所有数据库均支持
+                startSql = "SELECT " + queryPlan.getSelectColumns() + ", (" + buildCountSql(queryTable.table(), whereSql, countCap) + ") AS " + TOTAL_COLUMN;
+                break;
+            case ID_RANGE:
+                // 直接使用属性名作为别名，不依赖mapUnderscoreToCamelCase
+                startSql = "SELECT MIN(id) AS minId, MAX(id) AS maxId";
                 break;
             case DELETE:
                 startSql = "DELETE";
@@ -76,43 +167,43 @@ public class QueryProvider {
         return startSql + " FROM " + queryTable.table();
     }
 
+    /**
+     * count sql，countCap大于0时最多统计countCap行，耗时受countCap而非表大小限制
+     */
+    private String buildCountSql(String table, String whereSql, int countCap) {
+        if (countCap > 0) {
+            return "SELECT COUNT(*) FROM (SELECT 1 FROM " + table + whereSql + " LIMIT " + countCap + ") t_cap";
+        }
+        return "SELECT COUNT(*) FROM " + table + whereSql;
+    }
+
     /**
      * 优化查询，select *优化为 select实体类映射的字段
      */
-    private String buildSelectColumn(Class<?> clazz) {
+    static String buildSelectColumn(Class<?> clazz) {
         List<String> needSelectColumn = Arrays.stream(FieldUtils.getAllFields(clazz))
-                .filter(this::shouldRetain)
-                .map(this::selectAs)
+                .filter(QueryProvider::shouldRetain)
+                .map(QueryProvider::selectAs)
                 .collect(Collectors.toList());
         return needSelectColumn.isEmpty() ? " *" : StringUtils.join(needSelectColumn, ", ");
     }
 
+    static Processor resolveProcessor(QuerySuffixEnum suffixEnum) {
+        return suffixProcessorMap.get(suffixEnum.name().toLowerCase() + Processor.class.getSimpleName());
+    }
+
     /**
      * 构建条件查询sql
      */
     protected String buildWhereSql(String selectSql, Object query) {
-        List<String> whereList = new LinkedList<>();
-        Arrays.stream(query.getClass().getDeclaredFields()).forEach(field -> {
-            Object fieldValue = readFieldValue(query, field);
+        List<String> whereList = new ArrayList<>();
+        for (QueryPlan.Condition condition : QueryPlan.of(query.getClass()).getConditions()) {
+            Object fieldValue = condition.readValue(query);
             if (fieldValue == null) {
-                return;
-            }
-            if (field.isAnnotationPresent(QueryField.class)) {
-                String andSql = field.getAnnotation(QueryField.class).and();
-                if (StringUtils.isNotBlank(andSql)) {
-                    whereList.add(andSql);
-                }
-                return;
+                continue;
             }
-            String fieldName = field.getName();
-            QuerySuffixEnum suffixEnum = QuerySuffixEnum.resolve(fieldName);
-            String columnName = CommonUtil.camelCaseToUnderscore(suffixEnum.resolveColumnName(fieldName));
-            suffixProcessorMap.get(suffixEnum.name().toLowerCase() + Processor.class.getSimpleName())
-                    .process(whereList, columnName, fieldName, fieldValue);
-            if (suffixEnum == QuerySuffixEnum.Like) {
-                reWriteFieldValue(query, fieldName, CommonUtil.reWriteLikeValue(fieldValue.toString()));
-            }
-        });
+            condition.appendTo(whereList, fieldValue);
+        }
         if (!whereList.isEmpty()) {
             String whereSql = " WHERE " + StringUtils.join(whereList, " AND ");
             selectSql += whereSql;
@@ -131,37 +222,21 @@ public class QueryProvider {
     }
 
     /**
-     * 分页sql
+     * 分页sql，offset与pageSize以参数绑定，保证不同页的sql文本一致
      */
     private String buildPageSql(String selectSql, PageQuery pageQuery) {
         if (pageQuery.needPaging()) {
-            String pageSql = " LIMIT " + pageQuery.getOffset() + "," + pageQuery.getPageSize();
+            String pageSql = " LIMIT #{offset},#{pageSize}";
             selectSql += pageSql;
         }
         return selectSql;
     }
 
     protected Object readFieldValue(Object query, Field field) {
-        try {
-            return FieldUtils.readField(field, query, true);
-        } catch (IllegalAccessException e) {
-            log.error("Get the field value exception by reflection: {}", e.getMessage());
-        }
-        return null;
-    }
-
-    /**
-     * 重新赋值fieldValue
-     */
-    private void reWriteFieldValue(Object target, String fieldName, Object fieldValue) {
-        try {
-            FieldUtils.writeDeclaredField(target, fieldName, fieldValue, true);
-        } catch (IllegalAccessException e) {
-            log.error("Override exception for field value suffixed with like: {}", e.getMessage());
-        }
+        return FieldAccessor.of(field).get(query);
     }
 
-    private boolean shouldRetain(Field field) {
+    private static boolean shouldRetain(Field field) {
         return !field.getName().startsWith("$")
                 && !Modifier.isStatic(field.getModifiers())
                 && !field.isAnnotationPresent(Transient.class);
@@ -180,7 +255,7 @@ public class QueryProvider {
      * 应用场景：选择字段查询时（非select *）
      * @return 如: user_code AS userCode
      */
-    private String selectAs(Field field) {
+    private static String selectAs(Field field) {
         String columnName = resolveColumnName(field);
         String fieldName = field.getName();
         return columnName.equalsIgnoreCase(fieldName) ? columnName : columnName + " AS " + fieldName;
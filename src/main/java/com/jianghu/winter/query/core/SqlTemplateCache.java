@@ -0,0 +1,107 @@
+package com.jianghu.winter.query.core;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 按查询形态缓存生成的sql
+ * 形态相同（Query类、操作、非null字段及IN集合大小、排序、是否分页、count上限）的查询生成的sql完全一致，
+ * 命中时直接返回缓存的sql，同时保证JDBC驱动的PreparedStatement缓存可以复用
+ *
+ * @author daniel.hu
+ */
+public class SqlTemplateCache {
+    private final int maxSize;
+    private final ConcurrentMap<ShapeKey, String> templates = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public SqlTemplateCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public String get(ShapeKey key, Supplier<String> sqlBuilder) {
+        String sql = templates.get(key);
+        if (sql != null) {
+            hitCount.increment();
+            return sql;
+        }
+        missCount.increment();
+        sql = sqlBuilder.get();
+        // 超出容量时整体淘汰，避免排序等字段组合过多导致无限增长
+        if (templates.size() >= maxSize) {
+            templates.clear();
+        }
+        templates.put(key, sql);
+        return sql;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    public void clear() {
+        templates.clear();
+    }
+
+    /**
+     * 查询形态
+     */
+    public static final class ShapeKey {
+        private final Class<?> queryClass;
+        private final Operation operation;
+        /**
+         * 每个条件字段一位：null为-1，集合为其size，其他为0
+         */
+        private final int[] shape;
+        private final String sort;
+        private final boolean paging;
+        private final int countCap;
+        private final int hash;
+
+        ShapeKey(Class<?> queryClass, Operation operation, int[] shape, String sort, boolean paging, int countCap) {
+            this.queryClass = queryClass;
+            this.operation = operation;
+            this.shape = shape;
+            this.sort = sort;
+            this.paging = paging;
+            this.countCap = countCap;
+            this.hash = 31 * Objects.hash(queryClass, operation, sort, paging, countCap) + Arrays.hashCode(shape);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ShapeKey)) {
+                return false;
+            }
+            ShapeKey that = (ShapeKey) o;
+            return hash == that.hash
+                    && paging == that.paging
+                    && countCap == that.countCap
+                    && queryClass == that.queryClass
+                    && operation == that.operation
+                    && Objects.equals(sort, that.sort)
+                    && Arrays.equals(shape, that.shape);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.jianghu.winter.query.core;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * 附带总数的查询结果，见{@link PageTotalInterceptor}
+ *
+ * @author daniel.hu
+ */
+@Getter
+public class TotalList<E> extends ArrayList<E> {
+    private static final long serialVersionUID = 1L;
+    /**
+     * 结果为空时为null
+     */
+    private final Long total;
+
+    public TotalList(Collection<? extends E> list, Long total) {
+        super(list);
+        this.total = total;
+    }
+}
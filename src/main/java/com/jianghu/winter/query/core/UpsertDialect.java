@@ -0,0 +1,102 @@
+package com.jianghu.winter.query.core;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * upsert语法方言，按MyBatis的databaseId（{@link org.apache.ibatis.mapping.DatabaseIdProvider}）为每个数据源分别选择
+ * 需配置DatabaseIdProvider，如{@link org.apache.ibatis.mapping.VendorDatabaseIdProvider}，
+ * 其按DatabaseMetaData#getDatabaseProductName()得到databaseId（配置了属性时为映射后的值，如: MySQL -&gt; mysql）
+ * 所有方言均以id作为冲突判断列
+ *
+ * @author daniel.hu
+ */
+public enum UpsertDialect {
+    /**
+     * MERGE ... USING (VALUES ...) AS s (...)，仅支持HSQLDB、H2
+     * notice: Oracle不支持USING (VALUES ...)，SQL Server要求MERGE以分号结尾，均不适用
+     */
+    MERGE {
+        @Override
+        String build(String tableName, List<String> columnNames, String valueRows) {
+            StringBuilder builder = new StringBuilder("MERGE INTO ").append(tableName).append(" t USING (VALUES ")
+                    .append(valueRows).append(") AS s (").append(ID_COLUMN);
+            columnNames.forEach(column -> builder.append(", ").append(column));
+            builder.append(") ON t.").append(ID_COLUMN).append(" = s.").append(ID_COLUMN).append(" WHEN MATCHED THEN UPDATE SET ");
+            for (int i = 0; i < columnNames.size(); i++) {
+                builder.append(i > 0 ? ", t." : "t.").append(columnNames.get(i)).append(" = s.").append(columnNames.get(i));
+            }
+            builder.append(" WHEN NOT MATCHED THEN INSERT (").append(ID_COLUMN);
+            columnNames.forEach(column -> builder.append(", ").append(column));
+            builder.append(") VALUES (s.").append(ID_COLUMN);
+            columnNames.forEach(column -> builder.append(", s.").append(column));
+            return builder.append(')').toString();
+        }
+    },
+    /**
+     * INSERT ... ON DUPLICATE KEY UPDATE
+     * notice: MySQL对更新的行返回影响行数2
+     */
+    MYSQL {
+        @Override
+        String build(String tableName, List<String> columnNames, String valueRows) {
+            StringBuilder builder = insertInto(tableName, columnNames, valueRows).append(" ON DUPLICATE KEY UPDATE ");
+            for (int i = 0; i < columnNames.size(); i++) {
+                String column = columnNames.get(i);
+                builder.append(i > 0 ? ", " : "").append(column).append(" = VALUES(").append(column).append(')');
+            }
+            return builder.toString();
+        }
+    },
+    /**
+     * INSERT ... ON CONFLICT (id) DO UPDATE
+     */
+    POSTGRESQL {
+        @Override
+        String build(String tableName, List<String> columnNames, String valueRows) {
+            StringBuilder builder = insertInto(tableName, columnNames, valueRows)
+                    .append(" ON CONFLICT (").append(ID_COLUMN).append(") DO UPDATE SET ");
+            for (int i = 0; i < columnNames.size(); i++) {
+                String column = columnNames.get(i);
+                builder.append(i > 0 ? ", " : "").append(column).append(" = EXCLUDED.").append(column);
+            }
+            return builder.toString();
+        }
+    };
+
+    private static final String ID_COLUMN = "id";
+
+    /**
+     * @param databaseId 如: MySQL、MariaDB、PostgreSQL、HSQL Database Engine、H2；未配置DatabaseIdProvider时为null
+     * @throws IllegalStateException    databaseId为null，无法判断数据库
+     * @throws IllegalArgumentException 不支持的数据库
+     */
+    public static UpsertDialect of(String databaseId) {
+        if (databaseId == null) {
+            throw new IllegalStateException("Upsert requires a databaseId to choose the dialect, configure a DatabaseIdProvider such as VendorDatabaseIdProvider");
+        }
+        String lowerCaseId = databaseId.toLowerCase(Locale.ROOT);
+        if (lowerCaseId.contains("mysql") || lowerCaseId.contains("mariadb")) {
+            return MYSQL;
+        }
+        if (lowerCaseId.contains("postgres")) {
+            return POSTGRESQL;
+        }
+        if (lowerCaseId.contains("hsql") || lowerCaseId.equals("h2")) {
+            return MERGE;
+        }
+        throw new IllegalArgumentException("Upsert is not supported for database: " + databaseId);
+    }
+
+    /**
+     * @param columnNames 除id外的列
+     * @param valueRows   如: (#{id}, #{account}), 首列为id
+     */
+    abstract String build(String tableName, List<String> columnNames, String valueRows);
+
+    private static StringBuilder insertInto(String tableName, List<String> columnNames, String valueRows) {
+        StringBuilder builder = new StringBuilder("INSERT INTO ").append(tableName).append(" (").append(ID_COLUMN);
+        columnNames.forEach(column -> builder.append(", ").append(column));
+        return builder.append(") VALUES ").append(valueRows);
+    }
+}
@@ -0,0 +1,57 @@
+package com.jianghu.winter.query.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 字段读写器，每个字段只创建一次，Query、Crud及缓存key共用
+ * 创建时即setAccessible，避免FieldUtils.readField每次调用的访问检查
+ * <p>
+ * 注：查询/实体字段是在循环中逐个读取的（调用点为多态），实测非常量MethodHandle及LambdaMetafactory生成的getter
+ * 在此场景下均慢于已setAccessible的Field（JDK8上Field基于Unsafe读写），故此处使用Field实现
+ *
+ * @author daniel.hu
+ */
+public final class FieldAccessor {
+    private static final Map<Field, FieldAccessor> ACCESSOR_CACHE = new ConcurrentHashMap<>();
+
+    private final Field field;
+
+    private FieldAccessor(Field field) {
+        if (Modifier.isStatic(field.getModifiers())) {
+            throw new IllegalArgumentException("Static field is not supported: " + field);
+        }
+        field.setAccessible(true);
+        this.field = field;
+    }
+
+    public static FieldAccessor of(Field field) {
+        return ACCESSOR_CACHE.computeIfAbsent(field, FieldAccessor::new);
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public String getName() {
+        return field.getName();
+    }
+
+    public Object get(Object target) {
+        try {
+            return field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Read field failed: " + field, e);
+        }
+    }
+
+    public void set(Object target, Object value) {
+        try {
+            field.set(target, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Write field failed: " + field, e);
+        }
+    }
+}
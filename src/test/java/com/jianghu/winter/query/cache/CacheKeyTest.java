@@ -0,0 +1,100 @@
+package com.jianghu.winter.query.cache;
+
+import com.jianghu.winter.query.core.PageQuery;
+import com.jianghu.winter.query.user.UserQuery;
+import com.jianghu.winter.query.user.UserType;
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * @author daniel.hu
+ */
+public class CacheKeyTest {
+
+    @Test
+    public void equalsAndHash() {
+        CacheKey key = CacheKey.of("query_", UserQuery.builder().account("daniel").userType(UserType.SYSTEM).build());
+        CacheKey same = CacheKey.of("query_", UserQuery.builder().userType(UserType.SYSTEM).account("daniel").build());
+        assertEquals(key, same);
+        assertEquals(key.hashCode(), same.hashCode());
+        assertNotEquals(key, CacheKey.of("count_", UserQuery.builder().account("daniel").userType(UserType.SYSTEM).build()));
+        assertNotEquals(key, CacheKey.of("query_", UserQuery.builder().account("daniel").build()));
+        assertEquals("query_{account:daniel,userType:SYSTEM}", key.toString());
+        CacheKey versioned = CacheKey.of("query_", "v1", UserQuery.builder().account("daniel").userType(UserType.SYSTEM).build());
+        assertNotEquals(key, versioned);
+        assertNotEquals(versioned, CacheKey.of("query_", "v2", UserQuery.builder().account("daniel").userType(UserType.SYSTEM).build()));
+        assertEquals("query_v1_{account:daniel,userType:SYSTEM}", versioned.toString());
+    }
+
+    @Test
+    public void ignorePageFields() {
+        UserQuery page1 = UserQuery.builder().account("daniel").build();
+        page1.setPageNumber(1);
+        page1.setSort("id,desc");
+        UserQuery page2 = UserQuery.builder().account("daniel").build();
+        page2.setPageNumber(2);
+        assertEquals(CacheKey.of("count_", "v1", page1, PageQuery.class), CacheKey.of("count_", "v1", page2, PageQuery.class));
+        assertNotEquals(CacheKey.of("count_", "v1", page1), CacheKey.of("count_", "v1", page2));
+        assertEquals("count_v1_{account:daniel}", CacheKey.of("count_", "v1", page1, PageQuery.class).toString());
+    }
+
+    @Test
+    public void snapshotCollections() {
+        List<Integer> ids = new ArrayList<>(Arrays.asList(1, 2));
+        UserQuery userQuery = UserQuery.builder().idIn(ids).build();
+        CacheKey key = CacheKey.of("query_", userQuery);
+        ids.add(3);
+        assertNotEquals(key, CacheKey.of("query_", userQuery));
+        assertEquals(key, CacheKey.of("query_", UserQuery.builder().idIn(Arrays.asList(1, 2)).build()));
+    }
+
+    @Test
+    public void snapshotSetsAndArrays() {
+        TagQuery query = new TagQuery();
+        query.setTags(new LinkedHashSet<>(Arrays.asList("a", "b")));
+        query.setCodes(new int[]{1, 2});
+        CacheKey key = CacheKey.of("query_", query);
+        query.getCodes()[0] = 3;
+        assertNotEquals(key, CacheKey.of("query_", query));
+
+        TagQuery reordered = new TagQuery();
+        reordered.setTags(new LinkedHashSet<>(Arrays.asList("b", "a")));
+        reordered.setCodes(new int[]{1, 2});
+        assertEquals(key, CacheKey.of("query_", reordered));
+        assertEquals(key.hashCode(), CacheKey.of("query_", reordered).hashCode());
+        assertEquals(key.toHashedString(), CacheKey.of("query_", reordered).toHashedString());
+    }
+
+    @Test
+    public void hashedString() {
+        CacheKey key = CacheKey.of("query_", UserQuery.builder().account("daniel").build());
+        assertEquals("query_".length() + 32, key.toHashedString().length());
+        assertEquals(key.toHashedString(), CacheKey.of("query_", UserQuery.builder().account("daniel").build()).toHashedString());
+        assertNotEquals(key.toHashedString(), CacheKey.of("query_", UserQuery.builder().account("james").build()).toHashedString());
+
+        // 字段值中的分隔符不能伪造其他查询的key
+        CacheKey forged = CacheKey.of("query_", "v1", UserQuery.builder().account("a,userType:SYSTEM").build());
+        CacheKey genuine = CacheKey.of("query_", "v1", UserQuery.builder().account("a").userType(UserType.SYSTEM).build());
+        assertEquals(genuine.toString(), forged.toString());
+        assertNotEquals(genuine.toHashedString(), forged.toHashedString());
+        assertNotEquals(CacheKey.of("count_", "v1", UserQuery.builder().build(), PageQuery.class).toHashedString(),
+                CacheKey.of("count_", "v1", UserQuery.builder().build()).toHashedString());
+    }
+
+    @Getter
+    @Setter
+    private static class TagQuery {
+        private Set<String> tags;
+        private int[] codes;
+    }
+}
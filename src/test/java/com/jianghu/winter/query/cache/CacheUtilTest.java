@@ -0,0 +1,23 @@
+package com.jianghu.winter.query.cache;
+
+import com.jianghu.winter.query.user.UserQuery;
+import com.jianghu.winter.query.user.UserType;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author daniel.hu
+ */
+public class CacheUtilTest {
+
+    @Test
+    public void transformObjectToCacheKey() {
+        UserQuery userQuery = UserQuery.builder().account("daniel").idIn(Arrays.asList(1, 2)).userType(UserType.SYSTEM).build();
+        userQuery.setPageNumber(1);
+        assertEquals("{account:daniel,idIn:[1, 2],userType:SYSTEM,pageNumber:1}", CacheUtil.transformObjectToCacheKey(userQuery));
+        assertEquals("{}", CacheUtil.transformObjectToCacheKey(UserQuery.builder().build()));
+    }
+}
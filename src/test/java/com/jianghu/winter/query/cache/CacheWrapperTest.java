@@ -0,0 +1,200 @@
+package com.jianghu.winter.query.cache;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author daniel.hu
+ */
+public class CacheWrapperTest {
+    private static final int THREADS = 32;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        CacheWrapper.setLoadTimeoutMillis(30_000);
+    }
+
+    @Test
+    public void singleFlight() throws Exception {
+        Cache cache = new ConcurrentMapCache("singleFlight");
+        AtomicInteger invocations = new AtomicInteger();
+        long coalesced = CacheWrapper.getCoalescedCount();
+        List<Future<String>> futures = submitAll(() -> CacheWrapper.execute(cache, "key", () -> {
+            invocations.incrementAndGet();
+            sleep(200);
+            return "value";
+        }));
+        for (Future<String> future : futures) {
+            assertEquals("value", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, invocations.get());
+        assertTrue(CacheWrapper.getCoalescedCount() > coalesced);
+    }
+
+    @Test
+    public void rereadAfterRegistering() {
+        // 模拟读取未命中后、注册加载前，上一个加载已写入缓存
+        Cache cache = new ConcurrentMapCache("rereadAfterRegistering") {
+            private boolean first = true;
+
+            @Override
+            public ValueWrapper get(Object key) {
+                if (first) {
+                    first = false;
+                    put(key, "loaded");
+                    return null;
+                }
+                return super.get(key);
+            }
+        };
+        long loads = CacheWrapper.getLoadCount();
+        assertEquals("loaded", CacheWrapper.execute(cache, "key", () -> {
+            fail("should read the value written by the previous load");
+            return "reloaded";
+        }));
+        assertEquals(loads, CacheWrapper.getLoadCount());
+    }
+
+    @Test
+    public void versionChangedDuringLoad() {
+        Cache cache = new ConcurrentMapCache("versionChangedDuringLoad");
+        AtomicInteger version = new AtomicInteger();
+        // 加载读到旧数据后，并发写入更新了版本号并删除了缓存
+        assertEquals("old", CacheWrapper.execute(cache, "key", 0, version::get, () -> {
+            version.incrementAndGet();
+            cache.evict("key");
+            return "old";
+        }));
+        assertNull(cache.get("key"));
+        assertEquals("new", CacheWrapper.execute(cache, "key", 0, version::get, () -> "new"));
+        assertEquals("new", cache.get("key").get());
+    }
+
+    @Test
+    public void failurePropagates() throws Exception {
+        Cache cache = new ConcurrentMapCache("failurePropagates");
+        AtomicInteger invocations = new AtomicInteger();
+        List<Future<String>> futures = submitAll(() -> CacheWrapper.execute(cache, "key", () -> {
+            invocations.incrementAndGet();
+            sleep(200);
+            throw new IllegalStateException("load failed");
+        }));
+        int failures = 0;
+        for (Future<String> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals("load failed", e.getCause().getMessage());
+                failures++;
+            }
+        }
+        assertEquals(THREADS, failures);
+        // 失败不写缓存，较晚到达的调用方会重新加载
+        assertTrue(invocations.get() < THREADS);
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void timeout() throws Exception {
+        Cache cache = new ConcurrentMapCache("timeout");
+        CacheWrapper.setLoadTimeoutMillis(50);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> slow = executor.submit(() -> CacheWrapper.execute(cache, "key", () -> {
+            await(release);
+            return "slow";
+        }));
+        sleep(50);
+        long timeouts = CacheWrapper.getTimeoutCount();
+        assertEquals("fast", CacheWrapper.execute(cache, "key", () -> "fast"));
+        assertEquals(timeouts + 1, CacheWrapper.getTimeoutCount());
+        release.countDown();
+        assertEquals("slow", slow.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void refreshAhead() throws Exception {
+        Cache cache = new ConcurrentMapCache("refreshAhead");
+        RefreshAheadPolicy policy = new RefreshAheadPolicy(50, 10_000, executor);
+        AtomicInteger version = new AtomicInteger();
+        CacheInvoker<String> loader = () -> "v" + version.incrementAndGet();
+        assertEquals("v1", CacheWrapper.execute(cache, "key", policy, loader));
+        assertEquals("v1", CacheWrapper.execute(cache, "key", policy, loader));
+        sleep(80);
+        // 超过softTtl：仍返回旧值，异步刷新
+        assertEquals("v1", CacheWrapper.execute(cache, "key", policy, loader));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"v2".equals(CacheWrapper.execute(cache, "key", policy, loader)) && System.currentTimeMillis() < deadline) {
+            sleep(10);
+        }
+        assertEquals("v2", CacheWrapper.execute(cache, "key", policy, loader));
+        assertEquals(2, version.get());
+    }
+
+    @Test
+    public void refreshAhead_hardExpired() {
+        Cache cache = new ConcurrentMapCache("refreshAhead_hardExpired");
+        RefreshAheadPolicy policy = new RefreshAheadPolicy(10, 30, executor);
+        AtomicInteger version = new AtomicInteger();
+        CacheInvoker<String> loader = () -> "v" + version.incrementAndGet();
+        assertEquals("v1", CacheWrapper.execute(cache, "key", policy, loader));
+        sleep(50);
+        assertEquals("v2", CacheWrapper.execute(cache, "key", policy, loader));
+    }
+
+    @Test
+    public void refreshAhead_sharedDefaultExecutor() {
+        assertSame(new RefreshAheadPolicy(10, 30).getExecutor(), new RefreshAheadPolicy(20, 60).getExecutor());
+    }
+
+    private List<Future<String>> submitAll(Callable<String> task) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        return futures;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
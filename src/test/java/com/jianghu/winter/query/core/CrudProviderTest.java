@@ -7,11 +7,14 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author daniel.hu
@@ -72,6 +75,52 @@ public class CrudProviderTest {
         assertEquals("INSERT INTO t_user (account, user_name, password, mobile, email, nick_name, valid, user_type) VALUES (#{list[0].account}, #{list[0].userName}, #{list[0].password}, #{list[0].mobile}, #{list[0].email}, #{list[0].nickName}, #{list[0].valid}, #{list[0].userType}), (#{list[1].account}, #{list[1].userName}, #{list[1].password}, #{list[1].mobile}, #{list[1].email}, #{list[1].nickName}, #{list[1].valid}, #{list[1].userType})", batchInsertSql);
     }
 
+    @Test
+    public void batchInsert_bucketed() {
+        List<UserEntity> list = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            list.add(new UserEntity());
+        }
+        Map<Object, Object> map = new HashMap<>();
+        map.put("list", list);
+        String batchInsertSql = CrudProvider.buildBatchInsert(map);
+        assertSame(batchInsertSql, CrudProvider.buildBatchInsert(map));
+        assertTrue(batchInsertSql.endsWith("(#{list[7].account}, #{list[7].userName}, #{list[7].password}, #{list[7].mobile}, #{list[7].email}, #{list[7].nickName}, #{list[7].valid}, #{list[7].userType})"));
+
+        assertEquals(1, CrudProvider.batchInsertBucketSize(0));
+        assertEquals(7, CrudProvider.batchInsertBucketSize(7));
+        assertEquals(511, CrudProvider.batchInsertBucketSize(511));
+        assertEquals(512, CrudProvider.batchInsertBucketSize(10000));
+    }
+
+    @Test
+    public void test_upsert() {
+        UserEntity userEntity = new UserEntity();
+        userEntity.setId(1);
+        assertEquals("MERGE INTO t_user t USING (VALUES (#{id}, #{account}, #{userName}, #{password}, #{mobile}, #{email}, #{nickName}, #{valid}, #{userType})) AS s (id, account, user_name, password, mobile, email, nick_name, valid, user_type) ON t.id = s.id WHEN MATCHED THEN UPDATE SET t.account = s.account, t.user_name = s.user_name, t.password = s.password, t.mobile = s.mobile, t.email = s.email, t.nick_name = s.nick_name, t.valid = s.valid, t.user_type = s.user_type WHEN NOT MATCHED THEN INSERT (id, account, user_name, password, mobile, email, nick_name, valid, user_type) VALUES (s.id, s.account, s.user_name, s.password, s.mobile, s.email, s.nick_name, s.valid, s.user_type)", CrudProvider.upsertSql(userEntity, UpsertDialect.of("HSQL Database Engine")));
+        assertEquals("INSERT INTO t_user (id, account, user_name, password, mobile, email, nick_name, valid, user_type) VALUES (#{id}, #{account}, #{userName}, #{password}, #{mobile}, #{email}, #{nickName}, #{valid}, #{userType}) ON DUPLICATE KEY UPDATE account = VALUES(account), user_name = VALUES(user_name), password = VALUES(password), mobile = VALUES(mobile), email = VALUES(email), nick_name = VALUES(nick_name), valid = VALUES(valid), user_type = VALUES(user_type)", CrudProvider.upsertSql(userEntity, UpsertDialect.of("MySQL")));
+        Map<Object, Object> map = new HashMap<>();
+        map.put("list", Arrays.asList(userEntity, userEntity));
+        assertEquals("INSERT INTO t_user (id, account, user_name, password, mobile, email, nick_name, valid, user_type) VALUES (#{list[0].id}, #{list[0].account}, #{list[0].userName}, #{list[0].password}, #{list[0].mobile}, #{list[0].email}, #{list[0].nickName}, #{list[0].valid}, #{list[0].userType}), (#{list[1].id}, #{list[1].account}, #{list[1].userName}, #{list[1].password}, #{list[1].mobile}, #{list[1].email}, #{list[1].nickName}, #{list[1].valid}, #{list[1].userType}) ON CONFLICT (id) DO UPDATE SET account = EXCLUDED.account, user_name = EXCLUDED.user_name, password = EXCLUDED.password, mobile = EXCLUDED.mobile, email = EXCLUDED.email, nick_name = EXCLUDED.nick_name, valid = EXCLUDED.valid, user_type = EXCLUDED.user_type", CrudProvider.batchUpsertSql(map, UpsertDialect.of("postgresql")));
+        assertSame(UpsertDialect.MYSQL, UpsertDialect.of("mariadb"));
+        assertSame(UpsertDialect.MERGE, UpsertDialect.of("H2"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_upsert_noDatabaseId() {
+        UpsertDialect.of(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_upsert_unsupportedDatabase() {
+        UpsertDialect.of("Oracle");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_upsert_nullId() {
+        CrudProvider.upsertSql(new UserEntity(), UpsertDialect.MERGE);
+    }
+
     @Test
     public void test_update() {
         UserEntity userEntity = new UserEntity();
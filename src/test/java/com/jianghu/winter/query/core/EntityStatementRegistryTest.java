@@ -0,0 +1,87 @@
+package com.jianghu.winter.query.core;
+
+import com.jianghu.winter.query.user.UserEntity;
+import com.jianghu.winter.query.user.UserType;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author daniel.hu
+ */
+public class EntityStatementRegistryTest {
+    private static final int THREADS = 64;
+    private static final int ROUNDS = 2000;
+
+    @Test
+    public void statements() {
+        EntityStatementRegistry registry = EntityStatementRegistry.of(UserEntity.class);
+        assertSame(registry, EntityStatementRegistry.of(UserEntity.class));
+        assertEquals("INSERT INTO t_user (account, user_name, password, mobile, email, nick_name, valid, user_type) VALUES (#{account}, #{userName}, #{password}, #{mobile}, #{email}, #{nickName}, #{valid}, #{userType})", registry.getInsertSql());
+        assertEquals("UPDATE t_user SET account = #{account}, user_name = #{userName}, password = #{password}, mobile = #{mobile}, email = #{email}, nick_name = #{nickName}, valid = #{valid}, user_type = #{userType}", registry.getUpdateSql());
+        assertEquals("account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id", registry.getSelectColumns());
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CrudProvider crudProvider = new CrudProvider();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int seed = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ROUNDS; i++) {
+                    int mask = (seed * 31 + i) & 0x7F;
+                    assertEquals(expectedPatch(mask), crudProvider.buildPatch(patchEntity(mask)));
+                    assertEquals("INSERT INTO t_user (account, user_name, password, mobile, email, nick_name, valid, user_type) VALUES (#{account}, #{userName}, #{password}, #{mobile}, #{email}, #{nickName}, #{valid}, #{userType})", crudProvider.buildInsert(patchEntity(mask)));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * valid为基本类型，始终参与patch
+     */
+    private static UserEntity patchEntity(int mask) {
+        UserEntity userEntity = new UserEntity();
+        userEntity.setAccount((mask & 1) != 0 ? "a" : null);
+        userEntity.setUserName((mask & 2) != 0 ? "u" : null);
+        userEntity.setPassword((mask & 4) != 0 ? "p" : null);
+        userEntity.setMobile((mask & 8) != 0 ? "m" : null);
+        userEntity.setEmail((mask & 16) != 0 ? "e" : null);
+        userEntity.setNickName((mask & 32) != 0 ? "n" : null);
+        userEntity.setUserType((mask & 64) != 0 ? UserType.SYSTEM : null);
+        return userEntity;
+    }
+
+    private static String expectedPatch(int mask) {
+        List<String> sets = new ArrayList<>();
+        String[][] columns = {{"account", "account"}, {"user_name", "userName"}, {"password", "password"}, {"mobile", "mobile"},
+                {"email", "email"}, {"nick_name", "nickName"}, {"valid", "valid"}, {"user_type", "userType"}};
+        int[] bits = {1, 2, 4, 8, 16, 32, -1, 64};
+        for (int i = 0; i < columns.length; i++) {
+            if (bits[i] < 0 || (mask & bits[i]) != 0) {
+                sets.add(columns[i][0] + " = #{" + columns[i][1] + "}");
+            }
+        }
+        return "UPDATE t_user SET " + StringUtils.join(sets, ", ") + " WHERE id = #{id}";
+    }
+}
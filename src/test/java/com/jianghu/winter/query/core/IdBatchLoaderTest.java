@@ -0,0 +1,94 @@
+package com.jianghu.winter.query.core;
+
+import com.jianghu.winter.query.user.UserEntity;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author daniel.hu
+ */
+public class IdBatchLoaderTest {
+
+    @Test
+    public void slowBatchDoesNotDelayNextWindow() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (IdBatchLoader<Integer, UserEntity> loader = new IdBatchLoader<>(ids -> {
+            if (ids.contains(1)) {
+                await(release);
+            }
+            List<UserEntity> entities = new ArrayList<>();
+            for (Integer id : ids) {
+                UserEntity userEntity = new UserEntity();
+                userEntity.setId(id);
+                entities.add(userEntity);
+            }
+            return entities;
+        }, 10, 100)) {
+            CompletableFuture<UserEntity> slow = loader.load(1);
+            Thread.sleep(50);
+            CompletableFuture<UserEntity> next = loader.load(2);
+            assertEquals(2, (int) next.get(1, TimeUnit.SECONDS).getId());
+            assertFalse(slow.isDone());
+            release.countDown();
+            assertEquals(1, (int) slow.get(1, TimeUnit.SECONDS).getId());
+        }
+    }
+
+    @Test
+    public void fullBatchRunsOnExecutor() throws Exception {
+        Thread caller = Thread.currentThread();
+        List<Thread> loadThreads = new ArrayList<>();
+        try (IdBatchLoader<Integer, UserEntity> loader = new IdBatchLoader<>(ids -> {
+            loadThreads.add(Thread.currentThread());
+            return new ArrayList<>();
+        }, 10_000, 2)) {
+            loader.load(1);
+            assertNull(loader.load(2).get(1, TimeUnit.SECONDS));
+            assertEquals(1, loadThreads.size());
+            assertNotSame(caller, loadThreads.get(0));
+        }
+    }
+
+    @Test
+    public void errorCompletesBatch() throws Exception {
+        try (IdBatchLoader<Integer, UserEntity> loader = new IdBatchLoader<>(ids -> {
+            throw new AssertionError("load failed");
+        }, 0, 100)) {
+            CompletableFuture<UserEntity> future = loader.load(1);
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AssertionError);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void loadAfterClose() {
+        IdBatchLoader<Integer, UserEntity> loader = new IdBatchLoader<>(ids -> new ArrayList<>(), 10, 100);
+        loader.close();
+        loader.load(1);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.jianghu.winter.query.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author daniel.hu
+ */
+public class InListPaddingTest {
+
+    @Test
+    public void paddedSize() {
+        assertEquals(1, InListPadding.paddedSize(1));
+        assertEquals(8, InListPadding.paddedSize(2));
+        assertEquals(512, InListPadding.paddedSize(500));
+        assertEquals(512, InListPadding.paddedSize(10000));
+    }
+
+    @Test
+    public void chunks() {
+        assertEquals(Arrays.asList(Arrays.asList(1, 2, 3, 3, 3, 3, 3, 3)), InListPadding.chunks(Arrays.asList(1, 2, 3)));
+        assertTrue(InListPadding.chunks(new ArrayList<Integer>()).isEmpty());
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 514; i++) {
+            values.add(i);
+        }
+        List<List<Integer>> chunks = InListPadding.chunks(values);
+        assertEquals(2, chunks.size());
+        assertEquals(512, chunks.get(0).size());
+        assertEquals(Arrays.asList(512, 513, 513, 513, 513, 513, 513, 513), chunks.get(1));
+    }
+}
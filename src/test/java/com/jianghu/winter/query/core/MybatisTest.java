@@ -1,27 +1,47 @@
 package com.jianghu.winter.query.core;
 
+import com.jianghu.winter.query.cache.CacheKey;
+import com.jianghu.winter.query.cache.RefreshAheadPolicy;
 import com.jianghu.winter.query.user.*;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.plugin.Invocation;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.session.SqlSessionManager;
 import org.junit.*;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
 import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 
 import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author daniel.hu
@@ -33,6 +53,7 @@ public class MybatisTest {
     private SqlSession sqlSession;
     private static Connection connection;
     private UserService userService;
+    private Map<String, Integer> mapperCalls;
 
     @BeforeClass
     public static void init() throws Exception {
@@ -50,9 +71,11 @@ public class MybatisTest {
     public void setUp() throws Exception {
         new ScriptRunner(connection).runScript(Resources.getResourceAsReader("import.sql"));
         sqlSession = sqlSessionFactory.openSession();
-        UserMapper userMapper = sqlSession.getMapper(UserMapper.class);
+        mapperCalls = new HashMap<>();
+        UserMapper userMapper = countingMapper(sqlSession.getMapper(UserMapper.class));
         userService = new UserService(userMapper);
         userService.setCacheManager(new ConcurrentMapCacheManager());
+        userService.setSqlSessionFactory(sqlSessionFactory);
     }
 
     @After
@@ -60,6 +83,20 @@ public class MybatisTest {
         sqlSession.close();
     }
 
+    /**
+     * 统计mapper方法调用次数
+     */
+    private UserMapper countingMapper(UserMapper userMapper) {
+        return (UserMapper) Proxy.newProxyInstance(UserMapper.class.getClassLoader(), new Class<?>[]{UserMapper.class}, (proxy, method, args) -> {
+            mapperCalls.merge(method.getName(), 1, Integer::sum);
+            try {
+                return method.invoke(userMapper, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        });
+    }
+
     @Test
     public void test_select() {
         List<UserEntity> entities = userService.query(UserQuery.builder().build());
@@ -86,6 +123,42 @@ public class MybatisTest {
         assertEquals(2, page.getList().size());
     }
 
+    @Test
+    public void test_page_countElision() {
+        UserQuery query = UserQuery.builder().build();
+        query.setPageNumber(1);
+        query.setPageSize(3);
+        PageList<UserEntity> page = userService.page(query);
+        assertEquals(4, page.total);
+        assertEquals(1, page.getList().size());
+
+        UserQuery noMatch = UserQuery.builder().account("nobody").build();
+        noMatch.setPageNumber(0);
+        assertEquals(0, userService.page(noMatch).total);
+        assertEquals(4, userService.page(UserQuery.builder().build()).total);
+        assertNull(mapperCalls.get("count"));
+
+        query.setPageNumber(0);
+        assertEquals(4, userService.page(query).total);
+        assertEquals(1, (int) mapperCalls.get("count"));
+    }
+
+    @Test
+    public void test_page_countCap() {
+        UserQuery query = UserQuery.builder().build();
+        query.setPageNumber(0);
+        query.setPageSize(2);
+        query.setCountCap(3);
+        PageList<UserEntity> page = userService.page(query);
+        assertEquals(3, page.total);
+        assertTrue(page.isTotalIsLowerBound());
+
+        query.setCountCap(10);
+        page = userService.page(query);
+        assertEquals(4, page.total);
+        assertFalse(page.isTotalIsLowerBound());
+    }
+
     @Test
     public void test_page2() {
         UserQuery query = UserQuery.builder().build();
@@ -96,6 +169,42 @@ public class MybatisTest {
         assertEquals(2, page.getList().size());
     }
 
+    @Test
+    public void test_singleStatementPage() {
+        userService.setSingleStatementPage(true);
+        UserQuery query = UserQuery.builder().userType(UserType.SYSTEM).build();
+        query.setPageNumber(0);
+        query.setPageSize(2);
+        List<UserEntity> list = userService.getMapper().queryWithTotal(query);
+        assertThat(list).isInstanceOf(TotalList.class).hasSize(2);
+        assertEquals(3L, (long) ((TotalList<UserEntity>) list).getTotal());
+        assertEquals("daniel", list.get(0).getAccount());
+
+        PageList<UserEntity> page = userService.page(query);
+        assertEquals(3, page.total);
+        assertEquals(2, page.getList().size());
+
+        query.setPageNumber(5);
+        page = userService.page(query);
+        assertEquals(3, page.total);
+        assertEquals(0, page.getList().size());
+    }
+
+    @Test
+    public void test_cursorPage() {
+        UserQuery query = UserQuery.builder().build();
+        query.setPageSize(3);
+        query.setSort("account,desc");
+        CursorPageList<UserEntity> page = userService.cursorPage(query);
+        assertThat(page.getList()).extracting("account").containsExactly("user3", "user2", "user1");
+        assertNotNull(page.getNextCursor());
+
+        query.setCursor(page.getNextCursor());
+        page = userService.cursorPage(query);
+        assertThat(page.getList()).extracting("account").containsExactly("daniel");
+        assertNull(page.getNextCursor());
+    }
+
     @Getter
     @Setter
     public static class UserResponse {
@@ -111,6 +220,135 @@ public class MybatisTest {
         return userResponse;
     }
 
+    @Test
+    public void test_stream() throws Exception {
+        try (Cursor<UserEntity> cursor = userService.stream(UserQuery.builder().userType(UserType.SYSTEM).build())) {
+            assertThat(cursor).extracting("account").containsExactly("daniel", "user1", "user3");
+        }
+        List<String> accounts = new ArrayList<>();
+        userService.forEach(UserQuery.builder().build(), userEntity -> accounts.add(userEntity.getAccount()));
+        assertThat(accounts).containsExactly("daniel", "user1", "user2", "user3");
+    }
+
+    @Test
+    public void test_forEach_ownSession() {
+        // 模拟SqlSessionTemplate：mapper调用返回后立即关闭会话
+        UserMapper closingMapper = (UserMapper) Proxy.newProxyInstance(UserMapper.class.getClassLoader(), new Class<?>[]{UserMapper.class}, (proxy, method, args) -> {
+            try (SqlSession session = sqlSessionFactory.openSession()) {
+                return method.invoke(session.getMapper(UserMapper.class), args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        });
+        UserService closingService = new UserService(closingMapper);
+        closingService.setSqlSessionFactory(sqlSessionFactory);
+        List<String> accounts = new ArrayList<>();
+        closingService.forEach(UserQuery.builder().build(), 2, userEntity -> accounts.add(userEntity.getAccount()));
+        assertThat(accounts).containsExactly("daniel", "user1", "user2", "user3");
+    }
+
+    @Test
+    public void test_fetchSizeInterceptor() throws Throwable {
+        List<Integer> fetchSizes = new ArrayList<>();
+        Statement statement = (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{Statement.class}, (proxy, method, args) -> {
+            if ("setFetchSize".equals(method.getName())) {
+                fetchSizes.add((Integer) args[0]);
+            }
+            return null;
+        });
+        StatementHandler statementHandler = (StatementHandler) Proxy.newProxyInstance(StatementHandler.class.getClassLoader(), new Class<?>[]{StatementHandler.class},
+                (proxy, method, args) -> statement);
+        Invocation invocation = new Invocation(statementHandler, StatementHandler.class.getMethod("prepare", Connection.class, Integer.class), new Object[]{null, null});
+        FetchSizeInterceptor interceptor = new FetchSizeInterceptor();
+        interceptor.intercept(invocation);
+        assertTrue(fetchSizes.isEmpty());
+        FetchSizeInterceptor.withFetchSize(50, () -> {
+            try {
+                return interceptor.intercept(invocation);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertEquals(Collections.singletonList(50), fetchSizes);
+    }
+
+    @Test
+    public void test_forEachBatch() {
+        List<List<String>> batches = new ArrayList<>();
+        UserQuery query = UserQuery.builder().build();
+        query.setSort("account,desc");
+        userService.forEachBatch(query, 3, batch -> batches.add(batch.stream().map(UserEntity::getAccount).collect(Collectors.toList())));
+        assertEquals(Arrays.asList(Arrays.asList("daniel", "user1", "user2"), Collections.singletonList("user3")), batches);
+        assertNull(mapperCalls.get("count"));
+
+        batches.clear();
+        userService.forEachBatch(UserQuery.builder().userType(UserType.SYSTEM).build(), 3, batch -> batches.add(batch.stream().map(UserEntity::getAccount).collect(Collectors.toList())));
+        assertEquals(Collections.singletonList(Arrays.asList("daniel", "user1", "user3")), batches);
+    }
+
+    @Test
+    public void test_parallelQuery() {
+        UserService parallelService = new UserService(SqlSessionManager.newInstance(sqlSessionFactory).getMapper(UserMapper.class));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<UserEntity> entities = parallelService.parallelQuery(UserQuery.builder().build(), 3, executor);
+            assertThat(entities).extracting("id").containsExactly(1, 2, 3, 4);
+
+            List<String> accounts = Collections.synchronizedList(new ArrayList<>());
+            parallelService.parallelForEach(UserQuery.builder().userType(UserType.SYSTEM).build(), 4, executor, userEntity -> accounts.add(userEntity.getAccount()));
+            assertThat(accounts).containsExactlyInAnyOrder("daniel", "user1", "user3");
+
+            assertThat(parallelService.parallelQuery(UserQuery.builder().account("nobody").build(), 4, executor)).isEmpty();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_parallelQuery_withoutCamelCaseMapping() throws Exception {
+        SqlSessionFactory plainFactory = new SqlSessionFactoryBuilder().build(Resources.getResourceAsReader("mybatis-config.xml"));
+        plainFactory.getConfiguration().setMapUnderscoreToCamelCase(false);
+        UserService plainService = new UserService(SqlSessionManager.newInstance(plainFactory).getMapper(UserMapper.class));
+        IdRange idRange = plainService.getMapper().idRange(UserQuery.builder().build());
+        assertEquals(1L, (long) idRange.getMinId());
+        assertEquals(4L, (long) idRange.getMaxId());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertThat(plainService.parallelQuery(UserQuery.builder().build(), 2, executor)).extracting("id").containsExactly(1, 2, 3, 4);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_getCoalescing() throws Exception {
+        UserService coalescingService = new UserService(SqlSessionManager.newInstance(sqlSessionFactory).getMapper(UserMapper.class));
+        coalescingService.enableGetCoalescing(50, 64);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<UserEntity>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                int id = i % 5 + 1;
+                futures.add(executor.submit(() -> coalescingService.get(id)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                UserEntity userEntity = futures.get(i).get();
+                if (i % 5 + 1 == 5) {
+                    assertNull(userEntity);
+                } else {
+                    assertEquals(i % 5 + 1, (int) userEntity.getId());
+                }
+            }
+            Map<Integer, Long> histogram = coalescingService.getCoalescedBatchSizeHistogram();
+            // 相同id去重，每批最多5个id
+            assertTrue(histogram.keySet().stream().allMatch(bucket -> bucket <= 8));
+            assertTrue(histogram.values().stream().mapToLong(Long::longValue).sum() < 32);
+        } finally {
+            executor.shutdown();
+            coalescingService.disableGetCoalescing();
+        }
+    }
+
     @Test
     public void test_where() {
         List<UserEntity> entities = userService.query(UserQuery.builder().account("daniel").build());
@@ -123,12 +361,69 @@ public class MybatisTest {
         assertEquals("daniel", userEntity.getAccount());
     }
 
+    @Test
+    public void test_getById_readThrough() {
+        assertEquals("daniel", userService.get(1).getAccount());
+        userService.get(1);
+        assertNull(userService.get(99));
+        assertNull(userService.get(99));
+        assertTrue(userService.getAll(Collections.singletonList(99)).isEmpty());
+        assertEquals(2, (int) mapperCalls.get("get"));
+        assertNull(mapperCalls.get("getByIds"));
+
+        UserEntity userEntity = new UserEntity();
+        userEntity.setId(99);
+        userEntity.setAccount("created");
+        userService.upsert(userEntity);
+        assertEquals("created", userService.get(99).getAccount());
+    }
+
+    @Test
+    public void test_getById_negativeTtl() throws InterruptedException {
+        userService.setNegativeCacheTtlMillis(20);
+        assertNull(userService.get(99));
+        assertNull(userService.get(99));
+        assertEquals(1, (int) mapperCalls.get("get"));
+        Thread.sleep(30);
+        assertNull(userService.get(99));
+        assertEquals(2, (int) mapperCalls.get("get"));
+    }
+
+    @Test
+    public void test_getById_createdAfterMiss() {
+        assertNull(userService.get(5));
+        assertTrue(userService.getAll(Collections.singletonList(6)).isEmpty());
+        UserEntity userEntity = new UserEntity();
+        userEntity.setAccount("created");
+        userService.create(userEntity);
+        userService.create(Collections.singletonList(userEntity));
+        assertEquals("created", userService.get(5).getAccount());
+        assertEquals("created", userService.getAll(Collections.singletonList(6)).get(6).getAccount());
+    }
+
+    @Test
+    public void test_getById_negativeTtlDisabled() {
+        userService.setNegativeCacheTtlMillis(0);
+        assertNull(userService.get(99));
+        assertNull(userService.get(99));
+        assertEquals(2, (int) mapperCalls.get("get"));
+        assertFalse(((ConcurrentMapCache) userService.cache).getNativeCache().containsKey("id_99"));
+    }
+
     @Test
     public void test_delete() {
         userService.delete(1);
         assertNull(userService.get(1));
     }
 
+    @Test
+    public void test_deleteByIds() {
+        assertEquals(3, userService.delete(Arrays.asList(1, 2, 2, 3, 99)));
+        assertEquals(1, (int) mapperCalls.get("deleteByIds"));
+        assertNull(userService.get(2));
+        assertNotNull(userService.get(4));
+    }
+
     @Test
     public void test_deleteByQuery() {
         int deleteCount = userService.delete(UserQuery.builder().account("daniel").build());
@@ -142,6 +437,15 @@ public class MybatisTest {
         assertEquals("user2", entity.getAccount());
     }
 
+    @Test
+    public void test_like_reuse() {
+        UserQuery userQuery = UserQuery.builder().userNameLike("张").build();
+        assertEquals(1, userService.query(userQuery).size());
+        assertEquals(1, userService.count(userQuery));
+        assertEquals("张", userQuery.getUserNameLike());
+        assertEquals(0, userService.query(UserQuery.builder().userNameLike("%").build()).size());
+    }
+
     @Test
     public void test_in() {
         List<UserEntity> entities = userService.query(UserQuery.builder().idIn(Arrays.asList(1, 2)).build());
@@ -205,6 +509,35 @@ public class MybatisTest {
 
     }
 
+    @Test
+    public void test_batchInsert_bucketed() {
+        List<UserEntity> list = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            UserEntity userEntity = new UserEntity();
+            userEntity.setAccount("bucket" + i);
+            userEntity.setValid(true);
+            userEntity.setUserType(UserType.TENANT);
+            list.add(userEntity);
+        }
+        assertEquals(11, userService.create(list));
+        assertEquals(11, userService.count(UserQuery.builder().userType(UserType.TENANT).build()) - 1);
+    }
+
+    @Test
+    public void test_batchInsert_jdbcBatch() {
+        List<UserEntity> list = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            UserEntity userEntity = new UserEntity();
+            userEntity.setAccount("batch" + i);
+            userEntity.setValid(true);
+            userEntity.setUserType(UserType.TENANT);
+            list.add(userEntity);
+        }
+        int[] counts = userService.create(list, BatchOptions.builder().batchSize(2).build());
+        assertThat(counts).containsExactly(2, 2, 1);
+        assertEquals(5, userService.count(UserQuery.builder().userType(UserType.TENANT).build()) - 1);
+    }
+
     @Test
     public void test_update() {
         UserEntity userEntity = userService.get(1);
@@ -231,6 +564,193 @@ public class MybatisTest {
                 .hasFieldOrPropertyWithValue("userName", "updateName");
     }
 
+    @Test
+    public void test_getAll() {
+        Map<Integer, UserEntity> users = userService.getAll(Arrays.asList(3, 1, 99, 1));
+        assertEquals(Arrays.asList(3, 1), new ArrayList<>(users.keySet()));
+        assertEquals("daniel", users.get(1).getAccount());
+        assertEquals(1, (int) mapperCalls.get("getByIds"));
+
+        // 命中的id不再查询，只查询未命中的部分
+        users = userService.getAll(Arrays.asList(1, 2, 3));
+        assertEquals(3, users.size());
+        assertEquals("user1", users.get(2).getAccount());
+        assertEquals(2, (int) mapperCalls.get("getByIds"));
+        userService.getAll(Arrays.asList(1, 2, 3));
+        assertEquals(2, (int) mapperCalls.get("getByIds"));
+    }
+
+    @Test
+    public void test_page_sharedCount() {
+        for (int pageNumber = 1; pageNumber <= 10; pageNumber++) {
+            UserQuery userQuery = UserQuery.builder().build();
+            userQuery.setPageNumber(pageNumber);
+            userQuery.setPageSize(1);
+            userQuery.setSort(pageNumber % 2 == 0 ? "id DESC" : "account");
+            assertEquals(4, userService.page(userQuery).total);
+        }
+        assertEquals(1, (int) mapperCalls.get("count"));
+
+        // count上限不同的count不能共用
+        UserQuery cappedQuery = UserQuery.builder().build();
+        cappedQuery.setPageNumber(1);
+        cappedQuery.setPageSize(1);
+        cappedQuery.setCountCap(2);
+        userService.page(cappedQuery);
+        assertEquals(2, (int) mapperCalls.get("count"));
+    }
+
+    @Test
+    public void test_refreshAhead_reusedQuery() {
+        List<Runnable> refreshes = new ArrayList<>();
+        userService.setRefreshAheadPolicy(new RefreshAheadPolicy(0, 60_000, refreshes::add));
+        UserQuery query = UserQuery.builder().build();
+        query.setPageNumber(0);
+        query.setPageSize(1);
+        assertEquals(1, (int) userService.query(query).get(0).getId());
+        // 已过softTtl，提交刷新后调用方翻页复用同一个query
+        userService.query(query);
+        assertEquals(1, refreshes.size());
+        query.setPageNumber(1);
+        refreshes.forEach(Runnable::run);
+
+        query.setPageNumber(0);
+        assertEquals(1, (int) userService.query(query).get(0).getId());
+    }
+
+    @Test
+    public void test_versionedInvalidation() {
+        UserQuery userQuery = UserQuery.builder().account("user1").build();
+        userService.getAll(Arrays.asList(1, 2));
+        assertEquals("user1", userService.query(userQuery).get(0).getAccount());
+        userService.query(userQuery);
+        assertEquals(1, (int) mapperCalls.get("query"));
+
+        UserEntity userEntity = new UserEntity();
+        userEntity.setId(2);
+        userEntity.setAccount("renamed");
+        userService.patch(userEntity);
+
+        // 写入后查询缓存版本变化，只有被修改的id失效
+        assertTrue(userService.query(userQuery).isEmpty());
+        assertEquals(2, (int) mapperCalls.get("query"));
+        assertEquals("daniel", userService.getAll(Collections.singletonList(1)).get(1).getAccount());
+        assertEquals(1, (int) mapperCalls.get("getByIds"));
+        Map<Integer, UserEntity> users = userService.getAll(Arrays.asList(1, 2));
+        assertEquals("renamed", users.get(2).getAccount());
+        assertEquals(2, (int) mapperCalls.get("getByIds"));
+        userService.getAll(Arrays.asList(1, 2));
+        assertEquals(2, (int) mapperCalls.get("getByIds"));
+
+        // ConcurrentMapCache没有淘汰策略，写入后旧版本的条目被删除
+        for (int i = 0; i < 100; i++) {
+            userEntity.setAccount("renamed" + i);
+            userService.patch(userEntity);
+            userService.query(userQuery);
+            userService.count(userQuery);
+        }
+        Map<Object, Object> entries = ((ConcurrentMapCache) userService.cache).getNativeCache();
+        assertEquals(2, entries.keySet().stream().filter(key -> key instanceof CacheKey).count());
+    }
+
+    @Test
+    public void test_upsert() {
+        UserEntity existing = new UserEntity();
+        existing.setId(1);
+        existing.setAccount("upsert1");
+        existing.setValid(true);
+        existing.setUserType(UserType.SYSTEM);
+        userService.upsert(existing);
+
+        UserEntity created = new UserEntity();
+        created.setId(100);
+        created.setAccount("upsert100");
+        created.setValid(false);
+        created.setUserType(UserType.TENANT);
+        userService.upsert(created);
+
+        assertThat(userService.get(1))
+                .hasFieldOrPropertyWithValue("account", "upsert1")
+                .hasFieldOrPropertyWithValue("mobile", null);
+        assertThat(userService.get(100))
+                .hasFieldOrPropertyWithValue("account", "upsert100")
+                .hasFieldOrPropertyWithValue("userType", UserType.TENANT);
+    }
+
+    @Test
+    public void test_batchUpsert() {
+        UserQuery userQuery = UserQuery.builder().build();
+        long count = userService.count(userQuery);
+        List<UserEntity> list = new ArrayList<>();
+        for (int id = 1; id <= 10; id++) {
+            UserEntity userEntity = new UserEntity();
+            userEntity.setId(id + 2);
+            userEntity.setAccount("upsert" + id);
+            userEntity.setValid(true);
+            list.add(userEntity);
+        }
+        userService.upsert(list);
+        // id 3、4 已存在
+        assertEquals(count + 8, userService.count(userQuery));
+        assertEquals("upsert1", userService.get(3).getAccount());
+        assertEquals("upsert10", userService.get(12).getAccount());
+    }
+
+    @Test
+    public void test_batchPatch() {
+        List<UserEntity> list = new ArrayList<>();
+        for (int id = 1; id <= 3; id++) {
+            UserEntity userEntity = new UserEntity();
+            userEntity.setId(id);
+            userEntity.setValid(true);
+            if (id == 2) {
+                userEntity.setMobile("13800000002");
+            } else {
+                userEntity.setUserName("batch" + id);
+            }
+            list.add(userEntity);
+        }
+        assertEquals(3, userService.patch(list));
+        assertThat(userService.get(1)).hasFieldOrPropertyWithValue("userName", "batch1");
+        assertThat(userService.get(2)).hasFieldOrPropertyWithValue("mobile", "13800000002");
+        assertThat(userService.get(3)).hasFieldOrPropertyWithValue("userName", "batch3");
+        assertEquals("daniel", userService.get(UserQuery.builder().userName("batch1").build()).getAccount());
+    }
+
+    @Test
+    public void test_batchPatch_sameId() {
+        List<UserEntity> list = new ArrayList<>();
+        for (String userName : Arrays.asList("a", "b", "c")) {
+            UserEntity userEntity = new UserEntity();
+            userEntity.setId(1);
+            userEntity.setValid(true);
+            userEntity.setUserName(userName);
+            if ("b".equals(userName)) {
+                userEntity.setAccount("x");
+            }
+            list.add(userEntity);
+        }
+        assertThat(userService.patch(list, BatchOptions.builder().batchSize(2).build())).containsExactly(2, 1);
+        assertThat(userService.get(1)).hasFieldOrPropertyWithValue("userName", "c").hasFieldOrPropertyWithValue("account", "x");
+    }
+
+    @Test
+    public void test_batchUpdate() {
+        List<UserEntity> list = new ArrayList<>();
+        for (int id = 1; id <= 2; id++) {
+            UserEntity userEntity = new UserEntity();
+            userEntity.setId(id);
+            userEntity.setAccount("account" + id);
+            userEntity.setValid(true);
+            userEntity.setUserType(UserType.TENANT);
+            list.add(userEntity);
+        }
+        assertEquals(2, userService.update(list));
+        assertThat(userService.get(2))
+                .hasFieldOrPropertyWithValue("account", "account2")
+                .hasFieldOrPropertyWithValue("mobile", null);
+    }
+
     @Test
     public void test_patchByQuery() {
         UserEntity userEntity = new UserEntity();
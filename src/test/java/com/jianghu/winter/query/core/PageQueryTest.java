@@ -59,4 +59,16 @@ public class PageQueryTest {
         assertEquals(0, (int) pageQuery.getPageNumber());
         assertEquals(10, (int) pageQuery.getPageSize());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void deduceTotal() {
+        PageQuery pageQuery = new PageQuery();
+        assertEquals(Long.valueOf(7), pageQuery.deduceTotal(7));
+        pageQuery.setPageNumber(2);
+        assertEquals(Long.valueOf(23), pageQuery.deduceTotal(3));
+        assertNull(pageQuery.deduceTotal(10));
+        assertNull(pageQuery.deduceTotal(0));
+        pageQuery.setPageNumber(0);
+        assertEquals(Long.valueOf(0), pageQuery.deduceTotal(0));
+    }
+}
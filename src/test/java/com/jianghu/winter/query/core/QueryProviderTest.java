@@ -1,5 +1,7 @@
 package com.jianghu.winter.query.core;
 
+import com.jianghu.winter.query.annotation.QueryTable;
+import com.jianghu.winter.query.user.UserEntity;
 import com.jianghu.winter.query.user.UserQuery;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Before;
@@ -9,6 +11,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 /**
  * @author daniel.hu
@@ -56,7 +60,7 @@ public class QueryProviderTest {
     public void wheresAndPage() {
         UserQuery userQuery = UserQuery.builder().account(ACCOUNT).userName("赵子龙").build();
         userQuery.setPageNumber(0);
-        assertEquals("SELECT account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id FROM t_user WHERE account = #{account} AND user_name = #{userName} LIMIT 0,10", queryProvider.buildSelect(userQuery));
+        assertEquals("SELECT account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id FROM t_user WHERE account = #{account} AND user_name = #{userName} LIMIT #{offset},#{pageSize}", queryProvider.buildSelect(userQuery));
     }
 
     @Test
@@ -77,7 +81,8 @@ public class QueryProviderTest {
     public void whereAndLike() {
         UserQuery userQuery = UserQuery.builder().build();
         userQuery.setUserNameLike("da");
-        assertEquals("SELECT account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id FROM t_user WHERE user_name LIKE #{userNameLike}", queryProvider.buildSelect(userQuery));
+        assertEquals("SELECT account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id FROM t_user WHERE user_name LIKE #{userNameLike,typeHandler=com.jianghu.winter.query.core.LikeTypeHandler}", queryProvider.buildSelect(userQuery));
+        assertEquals("da", userQuery.getUserNameLike());
     }
 
     @Test
@@ -100,5 +105,86 @@ public class QueryProviderTest {
         assertEquals("SELECT account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id FROM t_user WHERE (user_name = #{userNameOrNickName} OR nick_name = #{userNameOrNickName})", queryProvider.buildSelect(userQuery));
     }
 
+    @Test
+    public void queryPlan() {
+        QueryPlan queryPlan = QueryPlan.of(UserQuery.class);
+        assertSame(queryPlan, QueryPlan.of(UserQuery.class));
+        assertEquals(6, queryPlan.getConditions().size());
+        QueryPlan.Condition userNameLike = queryPlan.getConditions().get(2);
+        assertEquals("user_name", userNameLike.getColumnName());
+        assertEquals("user_name LIKE #{userNameLike,typeHandler=com.jianghu.winter.query.core.LikeTypeHandler}", userNameLike.getFragment());
+        assertNull(queryPlan.getConditions().get(3).getFragment());
+    }
+
+    @Test
+    public void sqlTemplateCache() {
+        SqlTemplateCache sqlTemplateCache = QueryProvider.getSqlTemplateCache();
+        UserQuery userQuery = UserQuery.builder().account(ACCOUNT).idIn(Arrays.asList(1, 2)).build();
+        userQuery.setPageNumber(1);
+        String sql = queryProvider.buildSelect(userQuery);
+
+        long hitCount = sqlTemplateCache.getHitCount();
+        UserQuery sameShape = UserQuery.builder().account("user1").idIn(Arrays.asList(3, 4)).build();
+        sameShape.setPageNumber(2);
+        assertSame(sql, queryProvider.buildSelect(sameShape));
+        assertEquals(hitCount + 1, sqlTemplateCache.getHitCount());
+
+        long missCount = sqlTemplateCache.getMissCount();
+        UserQuery otherShape = UserQuery.builder().account(ACCOUNT).idIn(Arrays.asList(1, 2, 3)).build();
+        otherShape.setPageNumber(1);
+        assertEquals("SELECT account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id FROM t_user WHERE account = #{account} AND id IN (#{idIn[0]}, #{idIn[1]}, #{idIn[2]}) LIMIT #{offset},#{pageSize}", queryProvider.buildSelect(otherShape));
+        assertEquals(missCount + 1, sqlTemplateCache.getMissCount());
+    }
+
+    @Test
+    public void cursorSelect() {
+        UserQuery userQuery = UserQuery.builder().account(ACCOUNT).build();
+        userQuery.setSort("user_name,desc");
+        assertEquals("SELECT account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id FROM t_user WHERE account = #{param1.account} ORDER BY user_name DESC, id DESC LIMIT #{param3}", queryProvider.buildCursorSelect(userQuery, null, 10));
+        assertEquals("SELECT account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id FROM t_user WHERE account = #{param1.account} AND (user_name < #{param2[0]} OR (user_name = #{param2[0]} AND id < #{param2[1]})) ORDER BY user_name DESC, id DESC LIMIT #{param3}", queryProvider.buildCursorSelect(userQuery, Arrays.asList("daniel.hu", 1), 10));
+        assertEquals("SELECT account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id FROM t_user WHERE id > #{param2[0]} ORDER BY id ASC LIMIT #{param3}", queryProvider.buildCursorSelect(UserQuery.builder().build(), Arrays.asList(1), 10));
+    }
+
+    @Test
+    public void selectWithTotal() {
+        UserQuery userQuery = UserQuery.builder().account(ACCOUNT).build();
+        userQuery.setPageSize(2);
+        assertEquals("SELECT account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id, (SELECT COUNT(*) FROM t_user WHERE account = #{account}) AS total_rows__ FROM t_user WHERE account = #{account} LIMIT #{offset},#{pageSize}", queryProvider.buildSelectWithTotal(userQuery));
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void cappedCount() {
+        UserQuery userQuery = UserQuery.builder().account(ACCOUNT).build();
+        userQuery.setCountCap(10000);
+        assertEquals("SELECT COUNT(*) FROM (SELECT 1 FROM t_user WHERE account = #{account} LIMIT 10000) t_cap", queryProvider.buildCount(userQuery));
+    }
+
+    @Test
+    public void countCapOf() {
+        UserQuery userQuery = UserQuery.builder().build();
+        assertEquals(0, QueryPlan.of(UserQuery.class).countCapOf(userQuery));
+        userQuery.setCountCap(10000);
+        assertEquals(10000, QueryPlan.of(UserQuery.class).countCapOf(userQuery));
+
+        // 调用方只能调低注解配置的上限
+        CappedUserQuery cappedQuery = new CappedUserQuery();
+        QueryPlan queryPlan = QueryPlan.of(CappedUserQuery.class);
+        assertEquals(100, queryPlan.countCapOf(cappedQuery));
+        cappedQuery.setCountCap(0);
+        assertEquals(100, queryPlan.countCapOf(cappedQuery));
+        cappedQuery.setCountCap(Integer.MAX_VALUE);
+        assertEquals(100, queryPlan.countCapOf(cappedQuery));
+        cappedQuery.setCountCap(10);
+        assertEquals(10, queryPlan.countCapOf(cappedQuery));
+    }
+
+    @Test
+    public void scanSelect() {
+        UserQuery userQuery = UserQuery.builder().account(ACCOUNT).build();
+        assertEquals("SELECT account, user_name AS userName, password, mobile, email, nick_name AS nickName, valid, user_type AS userType, id FROM t_user WHERE account = #{param1.account} AND id > #{param2} ORDER BY id LIMIT #{param3}", queryProvider.buildScanSelect(userQuery, 1, 100));
+    }
+
+    @QueryTable(table = "t_user", entity = UserEntity.class, countCap = 100)
+    public static class CappedUserQuery extends PageQuery {
+    }
+}